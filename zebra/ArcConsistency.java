@@ -0,0 +1,169 @@
+//----------------------------------------------------------------------
+//  ArcConsistency
+//
+//  AC-3 style propagation of the relative clues.  Each relative clue is
+//  a constraint on the positions of two values, or three for BETWEEN.
+//  A value's position domain is its row of possible positions in the
+//  @position matrix, narrowed by the positions of the values it could
+//  still be related to (related values are the same entity, so they
+//  share a position).
+//
+//  revise() removes the positions of each value that have no support
+//  in the others' domains, e.g. for "a NEXT_TO b" with b in {1} a must
+//  be in {2}, or for "a LEFT_OF b" with b in {2, 4} a can't be at 4 or
+//  past it.  The PropagationQueue plays the part of the AC-3 worklist:
+//  a clue is queued again whenever a cell it reads changes, so running
+//  revise() on each queued clue until the queue is empty leaves every
+//  relative clue arc consistent before the engine has to guess.
+//
+//  A value also can't be related to a value of another variable whose
+//  positions don't overlap its own, so those cells are set to NO too.
+//----------------------------------------------------------------------
+
+class ArcConsistency
+{
+    LogicEngine _engine;
+    Variable    _varList[];
+    Variable    _positionVar;
+    int         _numValues;
+    long        _fullMask;      // one bit per position
+
+    //----------------------------------------------------------------------
+    //  Constructor -- the engine's matrices must already be built.
+    //----------------------------------------------------------------------
+    public ArcConsistency( LogicEngine inEngine )
+    {
+        _engine = inEngine;
+        _varList = inEngine.getVarList();
+        _positionVar = inEngine.getPositionVariable();
+        _numValues = inEngine.getNumValues();
+        _fullMask = (_numValues == 64) ? -1L : (1L << _numValues) - 1;
+    }
+
+    //----------------------------------------------------------------------
+    //  revise -- make this clue arc consistent in every direction.  The
+    //  clue says which positions have support, see
+    //  RelativePositionConstraint's findSupport().
+    //  Throws LogicFailureException if a value is left with no position.
+    //----------------------------------------------------------------------
+    void revise( RelativePositionConstraint inClue )
+        throws Exception
+    {
+        Value values[] = inClue.getValues();
+        long domain[] = inClue._domain;
+        long support[] = inClue._support;
+
+        for (int i = 0; i < values.length; i++)
+            domain[i] = getDomain( values[i] );
+
+        inClue.findSupport( domain, support, _fullMask );
+
+        for (int i = 0; i < values.length; i++)
+            restrict( values[i], domain[i], support[i] );
+
+        for (int i = 0; i < values.length; i++)
+            excludeDisjoint( values[i] );
+    }
+
+    //----------------------------------------------------------------------
+    //  getDomain -- positions still open to this value, one bit per
+    //  position.  For every other variable the value must share a
+    //  position with one of that variable's values it could still relate
+    //  to, so the domain is narrowed to the union of their positions.
+    //----------------------------------------------------------------------
+    long getDomain( Value inValue )
+        throws Exception
+    {
+        if (inValue.getVariable() == _positionVar)
+            return 1L << inValue.getIndex();
+
+        long domain = getPositions( inValue );
+        long reachable, possible;
+        Variable var;
+
+        for (int i = 0; (i < _varList.length) && (domain != 0); i++) {
+            var = _varList[i];
+            if ((var == _positionVar) || (var == inValue.getVariable()))
+                continue;
+
+            possible = inValue.getVariable().getMatrixForVariable( var ).getPossible( inValue );
+            reachable = 0;
+            for ( ; possible != 0 ; possible &= possible - 1)
+                reachable |= getPositions( var.getValueByIndex( Long.numberOfTrailingZeros( possible )));
+            domain &= reachable;
+        }
+        return domain;
+    }
+
+    long getPositions( Value inValue )
+        throws Exception
+    {
+        RelationMatrix mat = inValue.getVariable().getMatrixForVariable( _positionVar );
+        return mat.getPossible( inValue );
+    }
+
+    //----------------------------------------------------------------------
+    //  restrict -- take the unsupported positions away from this value and
+    //  everything related to it.
+    //----------------------------------------------------------------------
+    void restrict( Value inValue, long inDomain, long inSupport )
+        throws Exception
+    {
+        long lost = inDomain & ~inSupport;
+
+        if (lost == 0)
+            return;
+        if ((inDomain & inSupport) == 0)
+            throw new LogicFailureException("No position left for " + inValue,
+                                            _engine.getContext().getReason() );
+        if (inValue.getVariable() == _positionVar)
+            return;     // can't move a position, and it still has support
+
+        Value related;
+        int pos;
+
+        for ( ; lost != 0 ; lost &= lost - 1) {
+            pos = Long.numberOfTrailingZeros( lost );
+            inValue.setNoRelation( _positionVar.getValueByIndex( pos ));
+
+            for (int i = 0; i < _varList.length; i++) {
+                if ((_varList[i] == _positionVar) || (_varList[i] == inValue.getVariable()))
+                    continue;
+                related = inValue.getPositiveRelation( _varList[i] );
+                if (related != null)
+                    related.setNoRelation( _positionVar.getValueByIndex( pos ));
+            }
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  excludeDisjoint -- this value can't be related to anything that has
+    //  no position in common with it.
+    //----------------------------------------------------------------------
+    void excludeDisjoint( Value inValue )
+        throws Exception
+    {
+        if (inValue.getVariable() == _positionVar)
+            return;
+
+        long domain = getDomain( inValue );
+        Variable var;
+        Value other;
+
+        for (int i = 0; i < _varList.length; i++) {
+            var = _varList[i];
+            if ((var == _positionVar) || (var == inValue.getVariable()))
+                continue;
+            if (inValue.getPositiveRelation( var ) != null)
+                continue;
+
+            for (int j = 0; j < var.getValueCount(); j++) {
+                other = var.getValueByIndex( j );
+                if ((inValue.getRelation( other ) == RelationMatrix.UNSET) &&
+                    ((getPositions( other ) & domain) == 0))
+                    inValue.setNoRelation( other );
+            }
+        }
+    }
+
+}   // end of class definition
@@ -0,0 +1,25 @@
+//----------------------------------------------------------------------
+//  BatchStatisticsMBean
+//
+//  What ZebraBatch shows through JMX: totals over every puzzle solved
+//  so far, see BatchStatistics and SolverStatistics.  Times are in
+//  milliseconds, summed over all the worker threads.
+//----------------------------------------------------------------------
+
+public interface BatchStatisticsMBean
+{
+    public int  getSolved();
+    public int  getFailed();
+    public int  getGuesses();
+    public int  getBacktracks();
+    public int  getMaxDepth();
+    public int  getConflicts();
+    public long getCellSets();
+    public long getTransitivePropagations();
+    public long getEliminations();
+    public long getReapplications();
+    public long getBuildTime();
+    public long getInitTime();
+    public long getPropagateTime();
+    public long getSearchTime();
+}
@@ -0,0 +1,523 @@
+//----------------------------------------------------------------------
+//  BenchmarkSuite
+//
+//  Times the engine's parts one at a time, under each set of engine
+//  options, so a change to the solver can be measured rather than
+//  guessed at.  Each benchmark is run over and over for a fixed time,
+//  a few times to warm up and then a few times for real, and reports
+//  the mean time per operation and how much the runs varied.
+//
+//      parse           build lcz.txt's variables and empty matrices and
+//                      compile its clues
+//      set             guess an open cell of lcz.txt, propagate, undo
+//      transitive      findTransitiveRelations for an open cell, undo
+//      fixpoint        reapply every relative clue of lcz.txt until
+//                      nothing changes, undo
+//      solve-simple    solve simple.txt from scratch
+//      solve-lcz       solve lcz.txt from scratch
+//      solve-5 .. solve-12     solve generated puzzles of that size
+//
+//  The option sets are the engine's switches:
+//
+//      default         arc consistency and backjumping, as shipped
+//      plain           neither
+//      noarc           no arc consistency
+//      nobackjump      no backjumping
+//      classes         entity classes as well
+//      learning        clause learning as well
+//
+//      BenchmarkSuite [flags] [benchmark ...]
+//          -options name,name...   option sets to run, default all
+//          -time ms                length of each run, default 1000
+//          -warmup n               warm-up runs, default 3
+//          -runs n                 measured runs, default 5
+//          -save file              write the results to a file
+//          -compare file           and compare them with a saved file
+//
+//  With -compare, anything more than 10% slower than before is marked
+//  as a regression, and the exit status is 1 if there were any.
+//----------------------------------------------------------------------
+
+import java.io.*;
+import java.util.*;
+
+class BenchmarkSuite
+{
+    static final String kOptionNames[] = { "default", "plain", "noarc", "nobackjump",
+                                           "classes", "learning" };
+    static final String kBenchmarkNames[] = { "parse", "set", "transitive", "fixpoint",
+                                              "solve-simple", "solve-lcz",
+                                              "solve-5", "solve-6", "solve-7", "solve-8",
+                                              "solve-9", "solve-10", "solve-11", "solve-12" };
+    static final double kRegression = 1.10;     // this much slower is a regression
+    static final int kPuzzlesPerSize = 10;
+
+    static int      _sink = 0;          // results go here, so they can't be optimized away
+
+    long            _runTime = 1000;    // ms
+    int             _warmup = 3;
+    int             _runs = 5;
+    Properties      _results = new Properties();    // "benchmark/options" -> ns per op
+
+    //----------------------------------------------------------------------
+    //  main
+    //----------------------------------------------------------------------
+    public static void main( String args[] )
+    {
+        BenchmarkSuite suite = new BenchmarkSuite();
+        Vector benchmarks = new Vector();
+        String options[] = kOptionNames;
+        String saveFile = null, compareFile = null;
+        int regressions = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-options") && (i + 1 < args.length))
+                options = split( args[++i] );
+            else if (args[i].equals("-time") && (i + 1 < args.length))
+                suite._runTime = Long.parseLong( args[++i] );
+            else if (args[i].equals("-warmup") && (i + 1 < args.length))
+                suite._warmup = Integer.parseInt( args[++i] );
+            else if (args[i].equals("-runs") && (i + 1 < args.length))
+                suite._runs = Integer.parseInt( args[++i] );
+            else if (args[i].equals("-save") && (i + 1 < args.length))
+                saveFile = args[++i];
+            else if (args[i].equals("-compare") && (i + 1 < args.length))
+                compareFile = args[++i];
+            else
+                benchmarks.addElement( args[i] );
+        }
+        if (benchmarks.size() == 0)
+            for (int i = 0; i < kBenchmarkNames.length; i++)
+                benchmarks.addElement( kBenchmarkNames[i] );
+
+        try {
+            for (int i = 0; i < benchmarks.size(); i++)
+                for (int j = 0; j < options.length; j++)
+                    suite.run( System.out, (String) benchmarks.elementAt( i ), options[j] );
+        }
+        catch (Exception ex) {
+            System.err.println("Benchmark failed: " + ex );
+            System.exit( 2 );
+        }
+
+        try {
+            if (compareFile != null)
+                regressions = suite.compare( compareFile );
+            if (saveFile != null)
+                suite.save( saveFile );
+        }
+        catch (IOException ex) {
+            System.err.println("Can't read or write results: " + ex );
+            System.exit( 2 );
+        }
+        System.exit( (regressions == 0) ? 0 : 1 );
+    }
+
+    static String[] split( String inList )
+    {
+        StringTokenizer tokenizer = new StringTokenizer( inList, "," );
+        String names[] = new String[tokenizer.countTokens()];
+
+        for (int i = 0; i < names.length; i++)
+            names[i] = tokenizer.nextToken();
+        return names;
+    }
+
+    //----------------------------------------------------------------------
+    //  run -- warm one benchmark up, then time it, and print a line.
+    //----------------------------------------------------------------------
+    void run( PrintStream inOut, String inName, String inOptions )
+        throws Exception
+    {
+        Benchmark benchmark = makeBenchmark( inName, inOptions );
+        double times[] = new double[_runs];
+        double mean = 0, variance = 0;
+
+        for (int i = 0; i < _warmup; i++)
+            timeRun( benchmark );
+        for (int i = 0; i < _runs; i++) {
+            times[i] = timeRun( benchmark );
+            mean += times[i] / _runs;
+        }
+        for (int i = 0; i < _runs; i++)
+            variance += (times[i] - mean) * (times[i] - mean) / _runs;
+
+        _results.put( inName + "/" + inOptions, Long.toString( (long) mean ));
+        inOut.println( pad( inName, 14 ) + pad( inOptions, 12 ) +
+                       pad( Long.toString( (long) mean ), 12 ) + " ns/op  +- " +
+                       ((mean > 0) ? Math.round( 100 * Math.sqrt( variance ) / mean ) : 0) +
+                       "%  (" + _runs + " x " + _runTime + "ms)");
+    }
+
+    //----------------------------------------------------------------------
+    //  timeRun -- run the benchmark for _runTime ms.  Returns ns per op.
+    //  The clock is only read every so many ops, since the cheap ones
+    //  take less time than reading it.
+    //----------------------------------------------------------------------
+    double timeRun( Benchmark inBenchmark )
+        throws Exception
+    {
+        long start = System.nanoTime();
+        long end = start + _runTime * 1000000;
+        long now, ops = 0;
+        int batch = 1;
+
+        do {
+            for (int i = 0; i < batch; i++)
+                _sink += inBenchmark.run();
+            ops += batch;
+            now = System.nanoTime();
+            if ((now - start) < (end - start) / 100)
+                batch *= 2;
+        } while (now < end);
+
+        return (double) (now - start) / ops;
+    }
+
+    static String pad( String inText, int inWidth )
+    {
+        StringBuffer buf = new StringBuffer( inText );
+
+        while (buf.length() < inWidth)
+            buf.append(' ');
+        return buf.toString();
+    }
+
+    //----------------------------------------------------------------------
+    //  compare -- print each result against the one saved in inFile.
+    //  Returns how many are regressions.
+    //----------------------------------------------------------------------
+    int compare( String inFile )
+        throws IOException
+    {
+        Properties before = new Properties();
+        InputStream in = new FileInputStream( inFile );
+        int regressions = 0;
+
+        try {
+            before.load( in );
+        }
+        finally {
+            in.close();
+        }
+
+        System.out.println("\ncompared with " + inFile + ":");
+        for (Enumeration e = _results.keys(); e.hasMoreElements(); ) {
+            String key = (String) e.nextElement();
+            String old = before.getProperty( key );
+            if (old == null)
+                continue;
+
+            double now = Double.parseDouble( _results.getProperty( key ));
+            double then = Double.parseDouble( old );
+            boolean worse = now > then * kRegression;
+            if (worse)
+                regressions++;
+            System.out.println( pad( key, 26 ) + pad( old, 12 ) + pad( _results.getProperty( key ), 12 ) +
+                                ((then > 0) ? Math.round( 100 * (now - then) / then ) : 0) + "%" +
+                                (worse ? "  REGRESSION" : ""));
+        }
+        System.out.println( regressions + " regressions");
+        return regressions;
+    }
+
+    void save( String inFile )
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream( inFile );
+
+        try {
+            _results.store( out, "BenchmarkSuite, ns per op" );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  makeBenchmark -- by name, with the engine options set up.
+    //----------------------------------------------------------------------
+    static Benchmark makeBenchmark( String inName, String inOptions )
+        throws Exception
+    {
+        ClueFile simple = ClueFile.read( ZebraBenchmark.kDefaultPuzzles[0] );
+        ClueFile lcz = ClueFile.read( ZebraBenchmark.kDefaultPuzzles[1] );
+
+        if (inName.equals("parse"))
+            return new ParseBenchmark( lcz, inOptions );
+        if (inName.equals("set"))
+            return new SetBenchmark( lcz, inOptions );
+        if (inName.equals("transitive"))
+            return new TransitiveBenchmark( lcz, inOptions );
+        if (inName.equals("fixpoint"))
+            return new FixpointBenchmark( lcz, inOptions );
+        if (inName.equals("solve-simple"))
+            return new SolveBenchmark( new ClueFile[] { simple }, inOptions );
+        if (inName.equals("solve-lcz"))
+            return new SolveBenchmark( new ClueFile[] { lcz }, inOptions );
+
+        if (inName.startsWith("solve-")) {
+            int size = Integer.parseInt( inName.substring( 6 ));
+            Random random = new Random( size );     // the same puzzles every time
+            ClueFile puzzles[] = new ClueFile[kPuzzlesPerSize];
+            for (int i = 0; i < puzzles.length; i++)
+                puzzles[i] = ZebraBenchmark.randomPuzzle( random, size, size * (size + 1) );
+            return new SolveBenchmark( puzzles, inOptions );
+        }
+        throw new Exception("No benchmark called " + inName );
+    }
+
+}   // end of class definition
+
+
+
+
+//----------------------------------------------------------------------
+//  Benchmark
+//
+//  One thing to time.  run() does it once and returns anything at all
+//  that depends on the work, for the suite to hold on to.
+//----------------------------------------------------------------------
+
+abstract class Benchmark
+{
+    String      _options;
+
+    public Benchmark( String inOptions )
+        throws Exception
+    {
+        _options = inOptions;
+        newEngine( 2, new String[0] );      // check the name
+    }
+
+    abstract int run()
+        throws Exception;
+
+    //----------------------------------------------------------------------
+    //  newEngine -- an engine with this benchmark's options set
+    //----------------------------------------------------------------------
+    LogicEngine newEngine( int inNumValues, String inClues[] )
+        throws Exception
+    {
+        LogicEngine engine = new LogicEngine( inNumValues, inClues );
+
+        if (_options.equals("plain")) {
+            engine.setUseArcConsistency( false );
+            engine.setUseBackjumping( false );
+        } else if (_options.equals("noarc"))
+            engine.setUseArcConsistency( false );
+        else if (_options.equals("nobackjump"))
+            engine.setUseBackjumping( false );
+        else if (_options.equals("classes"))
+            engine.setUseEntityClasses( true );
+        else if (_options.equals("learning"))
+            engine.setUseClauseLearning( true );
+        else if (!_options.equals("default"))
+            throw new Exception("No engine options called " + _options );
+        return engine;
+    }
+
+    //----------------------------------------------------------------------
+    //  applyClues -- a new engine with the puzzle's clues applied, but not
+    //  yet reapplied or searched: where ZebraBenchmark -cycles starts.
+    //----------------------------------------------------------------------
+    LogicEngine applyClues( ClueFile inPuzzle )
+        throws Exception
+    {
+        LogicEngine engine = newEngine( inPuzzle.getNumValues(), inPuzzle.getClues() );
+
+        ZebraBenchmark.applyClues( engine, inPuzzle.getClues() );
+        return engine;
+    }
+}
+
+
+
+
+//----------------------------------------------------------------------
+//  ParseBenchmark -- read the variables from the clues and compile the
+//  clues to constraints, applying nothing.  The compiler needs the
+//  position variable, so the (empty) matrices are made too.
+//----------------------------------------------------------------------
+
+class ParseBenchmark extends Benchmark
+{
+    ClueFile    _puzzle;
+
+    public ParseBenchmark( ClueFile inPuzzle, String inOptions )
+        throws Exception
+    {
+        super( inOptions );
+        _puzzle = inPuzzle;
+    }
+
+    int run()
+        throws Exception
+    {
+        String clues[] = _puzzle.getClues();
+        LogicEngine engine = newEngine( _puzzle.getNumValues(), clues );
+
+        engine.buildVarList( clues );
+        engine.initRelationMatrices();
+        return engine.compileClues( clues ).size();
+    }
+}
+
+
+
+
+//----------------------------------------------------------------------
+//  SetBenchmark -- RelationMatrix.set() of an open cell to YES, with all
+//  it propagates through the matrices, then undo.  Goes round the open
+//  cells in turn.
+//----------------------------------------------------------------------
+
+class SetBenchmark extends Benchmark
+{
+    SolverContext   _context;
+    SetCommand      _cells[];
+    int             _next = 0;
+
+    public SetBenchmark( ClueFile inPuzzle, String inOptions )
+        throws Exception
+    {
+        super( inOptions );
+        LogicEngine engine = applyClues( inPuzzle );
+        _context = engine.getContext();
+        _cells = ZebraBenchmark.openCells( engine );
+        if (_cells.length == 0)
+            throw new Exception("No open cells");
+    }
+
+    int run()
+    {
+        SetCommand cell = _cells[_next];
+        int mark = _context.mark();
+
+        _next = (_next + 1) % _cells.length;
+        try {
+            cell.matrix.set( cell.x, cell.y, RelationMatrix.YES, 0 );
+        }
+        catch (Exception ex) { }    // a bad guess is undone all the same
+        int changed = _context._trailSize - mark;
+        _context.rewind( mark );
+        return changed;
+    }
+}
+
+
+
+
+//----------------------------------------------------------------------
+//  TransitiveBenchmark -- findTransitiveRelations() for the values of an
+//  open cell, as if it had just been set YES, then undo.  That's what
+//  set() does besides filling in the row and column.
+//----------------------------------------------------------------------
+
+class TransitiveBenchmark extends Benchmark
+{
+    SolverContext   _context;
+    SetCommand      _cells[];
+    int             _next = 0;
+
+    public TransitiveBenchmark( ClueFile inPuzzle, String inOptions )
+        throws Exception
+    {
+        super( inOptions );
+        LogicEngine engine = applyClues( inPuzzle );
+        _context = engine.getContext();
+        _cells = ZebraBenchmark.openCells( engine );
+        if (_cells.length == 0)
+            throw new Exception("No open cells");
+    }
+
+    int run()
+    {
+        SetCommand cell = _cells[_next];
+        Value valA = cell.matrix.getVariableA().getValueByIndex( cell.x );
+        Value valB = cell.matrix.getVariableB().getValueByIndex( cell.y );
+        int mark = _context.mark();
+
+        _next = (_next + 1) % _cells.length;
+        try {
+            cell.matrix.findTransitiveRelations( valA, valB, 0 );
+            cell.matrix.findTransitiveRelations( valB, valA, 0 );
+        }
+        catch (Exception ex) { }
+        int changed = _context._trailSize - mark;
+        _context.rewind( mark );
+        return changed;
+    }
+}
+
+
+
+
+//----------------------------------------------------------------------
+//  FixpointBenchmark -- queue every relative clue and reapply them until
+//  nothing they read changes, as the engine does after the first pass,
+//  then undo.
+//----------------------------------------------------------------------
+
+class FixpointBenchmark extends Benchmark
+{
+    LogicEngine     _engine;
+    SolverContext   _context;
+
+    public FixpointBenchmark( ClueFile inPuzzle, String inOptions )
+        throws Exception
+    {
+        super( inOptions );
+        _engine = applyClues( inPuzzle );
+        _context = _engine.getContext();
+    }
+
+    int run()
+    {
+        int mark = _context.mark();
+
+        _engine._queue.enqueueAll();
+        try {
+            _engine.reapplyRelativeClues();
+        }
+        catch (Exception ex) { }
+        int changed = _context._trailSize - mark;
+        _context.rewind( mark );
+        return changed;
+    }
+}
+
+
+
+
+//----------------------------------------------------------------------
+//  SolveBenchmark -- solve a puzzle from its clues on a new engine.
+//  Goes round the puzzles in turn.
+//----------------------------------------------------------------------
+
+class SolveBenchmark extends Benchmark
+{
+    ClueFile    _puzzles[];
+    int         _next = 0;
+
+    public SolveBenchmark( ClueFile inPuzzles[], String inOptions )
+        throws Exception
+    {
+        super( inOptions );
+        _puzzles = inPuzzles;
+    }
+
+    int run()
+        throws Exception
+    {
+        ClueFile puzzle = _puzzles[_next];
+        LogicEngine engine = newEngine( puzzle.getNumValues(), puzzle.getClues() );
+
+        _next = (_next + 1) % _puzzles.length;
+        try {
+            engine.solve();
+        }
+        catch (Exception ex) { }    // no solution is an answer too
+        return engine.getStatistics().getGuesses();
+    }
+}
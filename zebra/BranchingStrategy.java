@@ -0,0 +1,185 @@
+//----------------------------------------------------------------------
+//  BranchingStrategy
+//
+//  Picks the cell the LogicEngine guesses YES on once the clues have
+//  taken it as far as they can.  If the guess fails the engine takes it
+//  back and sets the cell to NO instead, so any UNSET cell will do; a
+//  good choice just fails (or succeeds) sooner.
+//  See LogicEngine.setBranchingStrategy().
+//----------------------------------------------------------------------
+
+import java.util.*;
+
+public interface BranchingStrategy
+{
+    //  chooseGuess -- return the cell to guess as a YES SetCommand that
+    //  hasn't been applied, or null if every matrix is fully related.
+    public SetCommand chooseGuess( LogicEngine inEngine );
+}
+
+
+//----------------------------------------------------------------------
+//  RowMajorBranching
+//
+//  The first UNSET cell of the first matrix that isn't fully related,
+//  in row-major order.  The engine's original order, and its default.
+//----------------------------------------------------------------------
+
+class RowMajorBranching implements BranchingStrategy
+{
+    public SetCommand chooseGuess( LogicEngine inEngine )
+    {
+        RelationMatrix matrices[] = inEngine.getMatrixList();
+        RelationMatrix mat;
+        long open;
+
+        for (int i = 0; i < matrices.length; i++) {
+            mat = matrices[i];
+            for (int x = 0; x < mat.getSize(); x++) {
+                open = mat.getRowUnset( x );
+                if (open != 0)
+                    return new SetCommand( mat, x, Long.numberOfTrailingZeros( open ),
+                                           RelationMatrix.YES );
+            }
+        }
+        return null;
+    }
+}
+
+
+//----------------------------------------------------------------------
+//  FewestCandidatesBranching
+//
+//  Most constrained first: the row or column with the fewest UNSET
+//  cells left, guessing its first one.  A line with an UNSET cell has
+//  no YES yet, so its UNSET cells are exactly its candidates, and there
+//  are always at least two (one would have been found by elimination).
+//  Fewer guesses than row-major on some puzzles and far more on others,
+//  so it isn't the default; see ZebraBenchmark to compare.
+//----------------------------------------------------------------------
+
+class FewestCandidatesBranching implements BranchingStrategy
+{
+    public SetCommand chooseGuess( LogicEngine inEngine )
+    {
+        RelationMatrix matrices[] = inEngine.getMatrixList();
+        RelationMatrix mat, bestMat = null;
+        int bestX = 0, bestY = 0, best = Integer.MAX_VALUE;
+        int count;
+        long open;
+
+        for (int i = 0; i < matrices.length; i++) {
+            mat = matrices[i];
+            for (int j = 0; j < mat.getSize(); j++) {
+
+                open = mat.getRowUnset( j );
+                count = Long.bitCount( open );
+                if ((count > 0) && (count < best)) {
+                    best = count;
+                    bestMat = mat;
+                    bestX = j;
+                    bestY = Long.numberOfTrailingZeros( open );
+                }
+
+                open = mat.getColumnUnset( j );
+                count = Long.bitCount( open );
+                if ((count > 0) && (count < best)) {
+                    best = count;
+                    bestMat = mat;
+                    bestX = Long.numberOfTrailingZeros( open );
+                    bestY = j;
+                }
+            }
+            if (best <= 2)      // can't do better
+                break;
+        }
+
+        if (bestMat == null)
+            return null;
+        return new SetCommand( bestMat, bestX, bestY, RelationMatrix.YES );
+    }
+}
+
+
+//----------------------------------------------------------------------
+//  ConstraintDegreeBranching
+//
+//  The UNSET cell whose two values are mentioned by the most clues, so
+//  a guess sets off as much propagation as possible.  Ties go to the
+//  cell in the row with fewer candidates.  The counts are kept until
+//  the engine's clues change, or it's asked about another engine.
+//----------------------------------------------------------------------
+
+class ConstraintDegreeBranching implements BranchingStrategy
+{
+    int     _degree[] = null;       // clues mentioning each value, by value id
+    LogicEngine _engine = null;     // what _degree was counted from
+    Vector  _constraints = null;
+    int     _changes = -1;
+
+    public SetCommand chooseGuess( LogicEngine inEngine )
+    {
+        RelationMatrix matrices[] = inEngine.getMatrixList();
+        RelationMatrix mat, bestMat = null;
+        int bestX = 0, bestY = 0, bestScore = -1, bestCount = 0;
+        int score, count, numValues = inEngine.getNumValues();
+        int idA, idB;
+        long open;
+
+        if ((inEngine != _engine) || (inEngine.getConstraints() != _constraints) ||
+            (inEngine.getConstraintChanges() != _changes))
+            countDegrees( inEngine );
+
+        for (int i = 0; i < matrices.length; i++) {
+            mat = matrices[i];
+            idA = mat.getVariableA().getIndex() * numValues;
+            idB = mat.getVariableB().getIndex() * numValues;
+
+            for (int x = 0; x < mat.getSize(); x++) {
+                open = mat.getRowUnset( x );
+                count = Long.bitCount( open );
+
+                for ( ; open != 0 ; open &= open - 1) {
+                    int y = Long.numberOfTrailingZeros( open );
+                    score = _degree[idA + x] + _degree[idB + y];
+                    if ((score > bestScore) || ((score == bestScore) && (count < bestCount))) {
+                        bestScore = score;
+                        bestCount = count;
+                        bestMat = mat;
+                        bestX = x;
+                        bestY = y;
+                    }
+                }
+            }
+        }
+
+        if (bestMat == null)
+            return null;
+        return new SetCommand( bestMat, bestX, bestY, RelationMatrix.YES );
+    }
+
+    //----------------------------------------------------------------------
+    //  countDegrees -- count how many clues mention each value
+    //----------------------------------------------------------------------
+    void countDegrees( LogicEngine inEngine )
+    {
+        Variable vars[] = inEngine.getVarList();
+        Vector constraints = inEngine.getConstraints();
+        int numValues = inEngine.getNumValues();
+        Value value;
+
+        _degree = new int[vars.length * numValues];
+        _engine = inEngine;
+        _constraints = constraints;
+        _changes = inEngine.getConstraintChanges();
+
+        for (int i = 0; i < vars.length; i++) {
+            for (int j = 0; j < vars[i].getValueCount(); j++) {
+                value = vars[i].getValueByIndex( j );
+                for (int k = 0; k < constraints.size(); k++)
+                    if (((Constraint) constraints.elementAt( k )).mentions( value ))
+                        _degree[i * numValues + j]++;
+            }
+        }
+    }
+}
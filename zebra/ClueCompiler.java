@@ -0,0 +1,205 @@
+//----------------------------------------------------------------------
+//  ClueCompiler
+//
+//  Turns each clue line, once, into a Constraint holding the Values it
+//  names.  Definitions (ISA, relation definitions, SOLVE and ANSWER)
+//  are recorded in the engine instead and compile to nothing.
+//  Variables must already be built from the ISA clues.
+//----------------------------------------------------------------------
+
+import java.util.*;
+
+class ClueCompiler
+{
+    LogicEngine _engine;
+    Vector      _relationList;  // user defined relations
+
+    //----------------------------------------------------------------------
+    //  Constructor
+    //----------------------------------------------------------------------
+    public ClueCompiler( LogicEngine inEngine )
+    {
+        _engine = inEngine;
+        _relationList = new Vector();
+    }
+
+    public Vector   getRelationList()   { return _relationList; }
+
+    //----------------------------------------------------------------------
+    //  compile -- Returns null for definitions and blank lines.
+    //  Throws when the parser believes the input is in a bad format.
+    //----------------------------------------------------------------------
+    public Constraint compile( String inClue, int inClueID )
+        throws Exception
+    {
+        StringTokenizer tokenizer = new StringTokenizer( inClue );
+
+        if (!tokenizer.hasMoreTokens())
+            return null;
+
+        String a = tokenizer.nextToken();
+
+        if (a.equals("SOLVE"))
+            parseWhatToSolveFor( tokenizer );
+
+        else if (a.equals("ANSWER"))
+            parseAnswerFormat( tokenizer );
+
+        else if (tokenizer.countTokens() == 3)  // "a DISTANCE n b", "a BETWEEN b c"
+            return compileFourPartRelation( inClueID, a, tokenizer, inClue );
+
+        else if (tokenizer.countTokens() != 2)  // should be 2 tokens left
+            throw new Exception("More than three strings in input string:" +
+                                    inClue );
+        else {      // a relation clue
+
+            String relation = tokenizer.nextToken();
+            String b = tokenizer.nextToken();
+            int relative = RelativePositionConstraint.relationCode( relation );
+
+            if (relation.equals("IS_LOCATED"))
+                return compilePositionRelation( inClueID, a, b );
+
+            else if ((relative == RelativePositionConstraint.DISTANCE) ||
+                     (relative == RelativePositionConstraint.BETWEEN))
+                throw new Exception("ERROR: " + relation + " needs another argument: " +
+                                    inClue );
+
+            else if (relative >= 0)
+                return new RelativePositionConstraint( inClueID, getValue( a ),
+                                                       getValue( b ), relative );
+
+            else if (relation.equals("ISA")) {
+                // skip definitions, handled elsewhere
+
+            } else {        // found a user defined relation
+                return compileUserRelation( inClueID, a, b, relation );
+            }
+        }
+        return null;
+    }
+
+    //----------------------------------------------------------------------
+    //  compileUserRelation -- given a user-defined relation, if this is the
+    //  first mention of the relation then it is a definition, otherwise it
+    //  is an application of the relation.
+    //----------------------------------------------------------------------
+    Constraint compileUserRelation( int inClueID, String inValueA, String inValueB,
+                                    String inRelation )
+        throws Exception
+    {
+        // see if this relation is already defined
+        if (_relationList.contains( inRelation ))
+            return new RelationConstraint( inClueID, getValue( inValueA ),
+                                           getValue( inValueB ));
+
+        try {                                       // define relation
+            _engine.getVariableByName( inValueA );  // verify a and b are
+            _engine.getVariableByName( inValueB );  // valid variables
+            _relationList.addElement( inRelation );
+        }
+        catch (Exception ex) {      // a or b are not valid variables
+            throw new Exception("ERROR: Relation '" + inRelation +
+                    "' not defined " + " before used.");
+        }
+        return null;
+    }
+
+    //----------------------------------------------------------------------
+    //  compileFourPartRelation -- "a DISTANCE n b", a and b are n positions
+    //  apart, or "a BETWEEN b c", a is somewhere between b and c.
+    //----------------------------------------------------------------------
+    Constraint compileFourPartRelation( int inClueID, String inValueNameA,
+                                        StringTokenizer inTokenizer, String inClue )
+        throws Exception
+    {
+        String relation = inTokenizer.nextToken();
+        String b = inTokenizer.nextToken();
+        String c = inTokenizer.nextToken();
+
+        if (relation.equals("BETWEEN"))
+            return new RelativePositionConstraint( inClueID, getValue( inValueNameA ),
+                                getValue( b ), getValue( c ),
+                                RelativePositionConstraint.BETWEEN, 0 );
+
+        if (!relation.equals("DISTANCE"))
+            throw new Exception("More than three strings in input string:" +
+                                    inClue );
+
+        int distance;
+        try {
+            distance = Integer.parseInt( b );
+        }
+        catch (NumberFormatException ex) {
+            distance = 0;
+        }
+        if ((distance < 1) || (distance >= _engine.getNumValues()))
+            throw new Exception("ERROR: Bad distance: " + inClue );
+
+        return new RelativePositionConstraint( inClueID, getValue( inValueNameA ),
+                            getValue( c ), null, RelativePositionConstraint.DISTANCE,
+                            distance );
+    }
+
+    //----------------------------------------------------------------------
+    //  compilePositionRelation -- IS_LOCATED becomes a relation with one of
+    //  the position variable's values.
+    //----------------------------------------------------------------------
+    Constraint compilePositionRelation( int inClueID, String inValueNameA, String inWhere )
+        throws Exception
+    {
+        int numValues = _engine.getNumValues();
+        int pos;
+
+        // set an absolute location
+        if (inWhere.equals("AT_LEFT"))
+            pos = 1;
+        else if (inWhere.equals("AT_RIGHT"))
+            pos = numValues;
+        else if (inWhere.equals("IN_MIDDLE")) {
+            pos = (numValues+1) / 2;
+            if ((numValues % 2) == 0)
+                throw new Exception("Can't set value IN_MIDDLE when there are" +
+                    " an even number of values: " + inValueNameA + " IS_LOCATED " +
+                     inWhere);
+        } else
+            throw new Exception("ERROR: Bad value :" + inValueNameA +
+                        " IS_LOCATED " + inWhere);
+
+        return new RelationConstraint( inClueID, getValue( inValueNameA ),
+                            _engine.getPositionVariable().getValueByIndex( pos-1 ));
+    }
+
+    //----------------------------------------------------------------------
+    //  getValue -- look up a value by name.
+    //  Throws if there's no such value.
+    //----------------------------------------------------------------------
+    Value getValue( String inValueName )
+        throws Exception
+    {
+        return _engine.getValueByName( inValueName );
+    }
+
+    //----------------------------------------------------------------------
+    //  parseWhatToSolveFor -- Look for "SOLVE variable relation value"
+    //  e.g. "person owns zebra"
+    //----------------------------------------------------------------------
+    void parseWhatToSolveFor( StringTokenizer inTokenizer )
+        throws Exception
+    {
+        Variable solutionVar = _engine.getVariableByName( inTokenizer.nextToken() );
+        String relation = inTokenizer.nextToken();
+        _engine.setSolveFor( solutionVar, inTokenizer.nextToken() );
+    }
+
+    //----------------------------------------------------------------------
+    //  parseAnswerFormat -- what order of variables to print solution values.
+    //----------------------------------------------------------------------
+    void parseAnswerFormat( StringTokenizer inTokenizer )
+        throws Exception
+    {
+        while (inTokenizer.hasMoreTokens())
+            _engine.addAnswerVariable( _engine.getVariableByName( inTokenizer.nextToken() ));
+    }
+
+}   // end of class definition
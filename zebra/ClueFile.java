@@ -0,0 +1,80 @@
+//----------------------------------------------------------------------
+//  ClueFile
+//
+//  A file of clues with the first line being two integers: # of clues,
+//  and problem dimension.  The rest should be clues, blank lines are
+//  skipped.  Reads without a FileDialog so it can be used headless.
+//  See ClueReader for files of more than one puzzle.
+//----------------------------------------------------------------------
+
+import java.io.*;
+
+class ClueFile
+{
+    String  _name;
+    int     _numValues;
+    String  _clues[];
+
+    //----------------------------------------------------------------------
+    //  Constructor -- clues that didn't come from a file
+    //----------------------------------------------------------------------
+    public ClueFile( String inName, int inNumValues, String inClues[] )
+    {
+        _name = inName;
+        _numValues = inNumValues;
+        _clues = inClues;
+    }
+
+    //----------------------------------------------------------------------
+    //  Accessors
+    //----------------------------------------------------------------------
+    public String   getName()       { return _name; }
+    public int      getNumValues()  { return _numValues; }
+    public int      getNumClues()   { return _clues.length; }
+    public String[] getClues()      { return _clues; }
+
+    //----------------------------------------------------------------------
+    //  read -- load a clue file by name, the first puzzle if it has more.
+    //  Throws if the file can't be read or has no header.
+    //----------------------------------------------------------------------
+    public static ClueFile read( String inFileName )
+        throws IOException
+    {
+        ClueReader in = new ClueReader( inFileName );
+
+        try {
+            ClueFile outFile = in.next();
+            if (outFile == null)
+                throw new IOException("Empty clue file: " + inFileName );
+            return outFile;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  write -- in the form read() reads: the header, then a clue a line.
+    //----------------------------------------------------------------------
+    public void write( PrintStream inOut )
+    {
+        inOut.println( _clues.length + " " + _numValues );
+        for (int i = 0; i < _clues.length; i++)
+            inOut.println( _clues[i] );
+    }
+
+    public void write( String inFileName )
+        throws IOException
+    {
+        PrintStream out = new PrintStream( new FileOutputStream( inFileName ));
+
+        try {
+            write( out );
+            if (out.checkError())
+                throw new IOException("Can't write clue file: " + inFileName );
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -120,7 +120,8 @@ public class ClueInputFrame extends Frame
     }
 
     //----------------------------------------------------------------------
-    //  readClueFile -- get a file to paste into text area.
+    //  readClueFile -- get a file to paste into text area, the clues of
+    //  its first puzzle, see ClueReader.
     //  Probably nukes applet capability.
     //----------------------------------------------------------------------
     void readClueFile()
@@ -128,18 +129,21 @@ public class ClueInputFrame extends Frame
         FileDialog dialog = new FileDialog( this, "Clue File");
         dialog.show();
 
-        try {
-            FileInputStream clueFile = new FileInputStream(
-                                    dialog.getDirectory() +
-                                    dialog.getFile() );
+        if (dialog.getFile() == null)
+            return;                     // cancelled
 
-            DataInputStream inline = new DataInputStream( clueFile );
+        try {
+            String clues[] = ClueFile.read( dialog.getDirectory() +
+                                            dialog.getFile() ).getClues();
+            StringBuffer text = new StringBuffer();
 
-            while (inline.available() > 0)
-                _inputArea.appendText( inline.readLine() + "\n" );
+            for (int i = 0; i < clues.length; i++)
+                text.append( clues[i] + "\n" );
+            _inputArea.appendText( text.toString() );
+        }
+        catch (IOException ex) {
+            System.err.println("Can't read clue file: " + ex );
         }
-        catch(IOException e) {} ;
-
     }
 
 
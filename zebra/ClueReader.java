@@ -0,0 +1,145 @@
+//----------------------------------------------------------------------
+//  ClueReader
+//
+//  Reads clue files a puzzle at a time, so a file of any size can be
+//  worked through without holding more than one puzzle of it.  Each
+//  puzzle is as ClueFile describes, a header of the number of clues and
+//  the problem dimension, then the clues, and a file may hold any
+//  number of them, separated by lines of "---".  A puzzle also ends
+//  once it has as many clues as its header says.  Anything after a '#'
+//  is a comment, and blank lines are skipped.
+//
+//  Input that starts with the gzip magic number is unzipped on the way
+//  in.  Text is UTF-8 unless another charset is given.  The first
+//  puzzle is named for the input, the ones after it name#2, name#3 ...
+//
+//  Ex:
+//    ClueReader in = new ClueReader("corpus.txt.gz");
+//    for (ClueFile puzzle; (puzzle = in.next()) != null ; )
+//        solve( puzzle );
+//    in.close();
+//----------------------------------------------------------------------
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+class ClueReader
+{
+    static final int kBufferSize = 1 << 16;
+    static final String kSeparator = "---";
+    static final String kDefaultCharset = "UTF-8";
+
+    BufferedReader  _in;
+    String      _name;
+    int         _lineNumber = 0;    // of the last line read
+    int         _numPuzzles = 0;    // read so far
+
+    //----------------------------------------------------------------------
+    //  Constructors
+    //----------------------------------------------------------------------
+    public ClueReader( String inFileName )
+        throws IOException
+    {
+        this( new FileInputStream( inFileName ), inFileName, kDefaultCharset );
+    }
+
+    public ClueReader( InputStream inStream, String inName, String inCharset )
+        throws IOException
+    {
+        InputStream stream = new BufferedInputStream( inStream, kBufferSize );
+
+        stream.mark( 2 );
+        int magic = stream.read() | (stream.read() << 8);
+        stream.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC)
+            stream = new GZIPInputStream( stream, kBufferSize );
+
+        _in = new BufferedReader( new InputStreamReader( stream, inCharset ), kBufferSize );
+        _name = inName;
+    }
+
+    public String   getName()       { return _name; }
+    public int      getPuzzleCount()    { return _numPuzzles; }     // read so far
+
+    public void close()
+        throws IOException
+    {
+        _in.close();
+    }
+
+    //----------------------------------------------------------------------
+    //  next -- the next puzzle, or null when there are no more.  Throws
+    //  if a header is bad, naming the line.
+    //----------------------------------------------------------------------
+    public ClueFile next()
+        throws IOException
+    {
+        String line;
+
+        do {
+            if ((line = nextLine()) == null)
+                return null;
+        } while (line.equals( kSeparator ));
+
+        int numClues, numValues;
+        try {
+            StringTokenizer tok = new StringTokenizer( line );
+            numClues = Integer.parseInt( tok.nextToken() );
+            numValues = Integer.parseInt( tok.nextToken() );
+        }
+        catch (NoSuchElementException ex) {
+            throw new IOException("Bad header in clue file: " + _name + ", line " + _lineNumber );
+        }
+        catch (NumberFormatException ex) {
+            throw new IOException("Bad header in clue file: " + _name + ", line " + _lineNumber );
+        }
+
+        // the header says how many, so the clues go straight into their
+        // array, though a header can't make it any size it likes
+        String clues[] = new String[Math.max( Math.min( numClues, 1024 ), 0 )];
+        int n = 0;
+
+        while ((n < numClues) && ((line = nextLine()) != null) &&
+               !line.equals( kSeparator )) {
+            if (n == clues.length) {
+                String more[] = new String[n * 2];
+                System.arraycopy( clues, 0, more, 0, n );
+                clues = more;
+            }
+            clues[n++] = line;
+        }
+
+        if (n < clues.length) {
+            String fewer[] = new String[n];
+            System.arraycopy( clues, 0, fewer, 0, n );
+            clues = fewer;
+        }
+
+        _numPuzzles++;
+        return new ClueFile( (_numPuzzles == 1) ? _name : _name + "#" + _numPuzzles,
+                             numValues, clues );
+    }
+
+    //----------------------------------------------------------------------
+    //  nextLine -- the next line that isn't blank once its comment is
+    //  cut off, trimmed, or null at the end.
+    //----------------------------------------------------------------------
+    String nextLine()
+        throws IOException
+    {
+        String line;
+        int comment;
+
+        while ((line = _in.readLine()) != null) {
+            _lineNumber++;
+            if ((comment = line.indexOf( '#' )) >= 0)
+                line = line.substring( 0, comment );
+            line = line.trim();
+            if (line.length() > 0)
+                return line;
+        }
+        return null;
+    }
+
+}   // end of class definition
@@ -0,0 +1,229 @@
+//----------------------------------------------------------------------
+//  Constraint
+//
+//  A clue compiled by ClueCompiler, with its values looked up once so
+//  applying it again needs no parsing or name lookups.
+//----------------------------------------------------------------------
+
+abstract class Constraint
+{
+    int     _clueID;        // index in the clue list
+
+    public Constraint( int inClueID )
+    {
+        _clueID = inClueID;
+    }
+
+    public int  getClueID()     { return _clueID; }
+
+    //----------------------------------------------------------------------
+    //  apply -- put what this clue says into the engine's matrices.
+    //  Throws LogicFailureException if it contradicts what's there.
+    //----------------------------------------------------------------------
+    abstract void apply( LogicEngine inEngine )
+        throws Exception;
+
+    //----------------------------------------------------------------------
+    //  mentions -- true if this clue is about this value
+    //----------------------------------------------------------------------
+    abstract boolean mentions( Value inValue );
+}
+
+
+//----------------------------------------------------------------------
+//  RelationConstraint
+//
+//  "value relation value", and "value IS_LOCATED where" with the
+//  position variable's value standing in for where.
+//----------------------------------------------------------------------
+
+class RelationConstraint extends Constraint
+{
+    Value   _valueA, _valueB;
+
+    public RelationConstraint( int inClueID, Value inValueA, Value inValueB )
+    {
+        super( inClueID );
+        _valueA = inValueA;
+        _valueB = inValueB;
+    }
+
+    public Value    getValueA()     { return _valueA; }
+    public Value    getValueB()     { return _valueB; }
+
+    void apply( LogicEngine inEngine )
+        throws Exception
+    {
+        _valueA.setRelation( _valueB );
+    }
+
+    boolean mentions( Value inValue )
+    {
+        return (inValue == _valueA) || (inValue == _valueB);
+    }
+}
+
+
+//----------------------------------------------------------------------
+//  RelativePositionConstraint
+//
+//  "value NEXT_TO value", "value IMMED_RIGHT_OF value" or
+//  "value IMMED_LEFT_OF value", and the looser orderings
+//  "value LEFT_OF value" and "value RIGHT_OF value" (anywhere to that
+//  side), "value DISTANCE n value" (n positions apart, either way) and
+//  "value BETWEEN value value" (strictly between the two, in either
+//  order).  These get reapplied whenever the relations they read
+//  change, see PropagationQueue.
+//
+//  findSupport() says which positions of each value the others' leave
+//  room for; ArcConsistency and the engine both prune with it.
+//----------------------------------------------------------------------
+
+class RelativePositionConstraint extends Constraint
+{
+    static final int NEXT_TO = 0;
+    static final int IMMED_RIGHT_OF = 1;
+    static final int IMMED_LEFT_OF = 2;
+    static final int LEFT_OF = 3;
+    static final int RIGHT_OF = 4;
+    static final int DISTANCE = 5;
+    static final int BETWEEN = 6;
+
+    Value   _valueA, _valueB;
+    Value   _valueC;            // BETWEEN's other end, else null
+    Value   _values[];          // A, B and C if there is one
+    int     _relation;
+    int     _distance;          // for DISTANCE, 1 for NEXT_TO
+    boolean _queued = false;    // waiting in the PropagationQueue
+    long    _domain[], _support[];  // by value, for findSupport()
+
+    public RelativePositionConstraint( int inClueID, Value inValueA, Value inValueB,
+                                       int inRelation )
+    {
+        this( inClueID, inValueA, inValueB, null, inRelation, 1 );
+    }
+
+    public RelativePositionConstraint( int inClueID, Value inValueA, Value inValueB,
+                                       Value inValueC, int inRelation, int inDistance )
+    {
+        super( inClueID );
+        _valueA = inValueA;
+        _valueB = inValueB;
+        _valueC = inValueC;
+        _relation = inRelation;
+        _distance = inDistance;
+
+        if (inValueC == null)
+            _values = new Value[] { inValueA, inValueB };
+        else
+            _values = new Value[] { inValueA, inValueB, inValueC };
+        _domain = new long[_values.length];
+        _support = new long[_values.length];
+    }
+
+    public Value    getValueA()     { return _valueA; }
+    public Value    getValueB()     { return _valueB; }
+    public Value    getValueC()     { return _valueC; }
+    public Value[]  getValues()     { return _values; }
+    public int      getRelation()   { return _relation; }
+    public int      getDistance()   { return _distance; }
+
+    void apply( LogicEngine inEngine )
+        throws Exception
+    {
+        if (_relation <= IMMED_LEFT_OF)
+            inEngine.calcRelativePosition( _valueA, _valueB, _relation );
+        else
+            inEngine.calcPositionBounds( this );
+    }
+
+    boolean mentions( Value inValue )
+    {
+        return (inValue == _valueA) || (inValue == _valueB) || (inValue == _valueC);
+    }
+
+    //----------------------------------------------------------------------
+    //  findSupport -- given each value's possible positions, one bit per
+    //  position, the positions of each that some positions of the others
+    //  fit the clue with.  The orderings only depend on the outermost
+    //  positions of the others, so each is a bound, and what's outside it
+    //  goes.
+    //----------------------------------------------------------------------
+    void findSupport( long inDomain[], long outSupport[], long inFullMask )
+    {
+        long a = inDomain[0], b = inDomain[1], c;
+
+        switch (_relation) {
+        case NEXT_TO:
+        case DISTANCE:
+            outSupport[0] = ((b << _distance) | (b >>> _distance)) & inFullMask;
+            outSupport[1] = ((a << _distance) | (a >>> _distance)) & inFullMask;
+            break;
+        case IMMED_RIGHT_OF:        // a = b + 1
+            outSupport[0] = (b << 1) & inFullMask;
+            outSupport[1] = a >>> 1;
+            break;
+        case IMMED_LEFT_OF:         // a = b - 1
+            outSupport[0] = b >>> 1;
+            outSupport[1] = (a << 1) & inFullMask;
+            break;
+        case LEFT_OF:               // a < b
+            outSupport[0] = leftOfLast( b );
+            outSupport[1] = rightOfFirst( a ) & inFullMask;
+            break;
+        case RIGHT_OF:              // a > b
+            outSupport[0] = rightOfFirst( b ) & inFullMask;
+            outSupport[1] = leftOfLast( a );
+            break;
+        case BETWEEN:               // b < a < c or c < a < b
+            c = inDomain[2];
+            outSupport[0] = ((rightOfFirst( b ) & leftOfLast( c )) |
+                             (rightOfFirst( c ) & leftOfLast( b ))) & inFullMask;
+            // an end needs a middle on one side of it with the other end beyond
+            outSupport[1] = (leftOfLast( a & leftOfLast( c )) |
+                             rightOfFirst( a & rightOfFirst( c ))) & inFullMask;
+            outSupport[2] = (leftOfLast( a & leftOfLast( b )) |
+                             rightOfFirst( a & rightOfFirst( b ))) & inFullMask;
+            break;
+        }
+    }
+
+    //  leftOfLast, rightOfFirst -- the positions left of the rightmost
+    //  one in the mask, right of the leftmost.  Nothing for no positions.
+    static long leftOfLast( long inMask )
+    {
+        if (inMask == 0)
+            return 0;
+        return Long.highestOneBit( inMask ) - 1;
+    }
+
+    static long rightOfFirst( long inMask )
+    {
+        if (inMask == 0)
+            return 0;
+        return (-1L << Long.numberOfTrailingZeros( inMask )) << 1;
+    }
+
+    //----------------------------------------------------------------------
+    //  relationCode -- the relation for a clue keyword, -1 if not relative.
+    //  DISTANCE and BETWEEN take a fourth word, see ClueCompiler.
+    //----------------------------------------------------------------------
+    static int relationCode( String inRelation )
+    {
+        if (inRelation.equals("NEXT_TO"))
+            return NEXT_TO;
+        else if (inRelation.equals("IMMED_RIGHT_OF"))
+            return IMMED_RIGHT_OF;
+        else if (inRelation.equals("IMMED_LEFT_OF"))
+            return IMMED_LEFT_OF;
+        else if (inRelation.equals("LEFT_OF"))
+            return LEFT_OF;
+        else if (inRelation.equals("RIGHT_OF"))
+            return RIGHT_OF;
+        else if (inRelation.equals("DISTANCE"))
+            return DISTANCE;
+        else if (inRelation.equals("BETWEEN"))
+            return BETWEEN;
+        return -1;
+    }
+}
@@ -0,0 +1,444 @@
+//----------------------------------------------------------------------
+//  EntityClasses
+//
+//  Another way of finding the transitive relations.  Values that are
+//  related (YES) are the same entity, so they're kept as classes of a
+//  union-find forest, at most one value of each variable to a class.
+//  A YES between two values joins their classes; everything in one
+//  class is then related to everything in the other, with no walking
+//  of matrices to find out.  A NO between two values means their
+//  classes can never be joined, so each class keeps a bitset of the
+//  values excluded from it, and joining two classes ORs theirs.
+//
+//  The matrices still hold every relation, for everyone who reads
+//  them; this just works out what to write there.  RelationMatrix.set()
+//  calls join() and separate() in place of findTransitiveRelations().
+//  See LogicEngine.setUseEntityClasses().
+//
+//  The forest has no path compression so that a union can be undone.
+//  Each change goes on an undo log here and leaves a marker on the
+//  context's trail, so rewinding the trail undoes it in step with the
+//  cells.
+//
+//  Each cell written here depends on the cells that tie it back to the
+//  two values just joined or separated, so backjumping sees as much as
+//  it would from the matrices.  The guess levels of a whole class, all
+//  of its YES's together and all of its exclusions together, stand in
+//  for a tie that isn't written yet, and for a failure.
+//----------------------------------------------------------------------
+
+class EntityClasses
+{
+    static final int kJoin = 1;
+    static final int kSeparate = 2;
+
+    SolverContext   _context;
+    RelationMatrix  _matrixTable[][];   // the engine's, by variable index pair
+    Value       _values[];      // by value id: variable index * numValues + value index
+    int         _numVars;
+    int         _numValues;     // values per variable
+    int         _words;         // longs in a bitset of value ids
+
+    int         _parent[];      // [id], the root is its own parent
+    int         _size[];        // [root], values in the class
+    long        _varMask[];     // [root], variables with a value in the class
+    int         _member[];      // [root * numVars + var], id of that variable's value
+    long        _members[];     // [root * words + w], ids in the class
+    long        _excluded[];    // [root * words + w], ids that can't join the class
+    long        _reason[];      // [root], guess levels its YES's depend on
+    long        _exclReason[];  // [root], guess levels its exclusions depend on
+
+    long        _log[];         // undo log, each change's old state then a header
+    int         _logSize = 0;
+
+    //----------------------------------------------------------------------
+    //  Constructor -- the engine's matrices must already be built.  Every
+    //  value starts out a class of its own.  Only up to 64 variables.
+    //----------------------------------------------------------------------
+    public EntityClasses( LogicEngine inEngine )
+    {
+        Variable vars[] = inEngine.getVarList();
+        int numIDs, id;
+
+        _context = inEngine.getContext();
+        _matrixTable = inEngine._matrixTable;
+        _numVars = vars.length;
+        _numValues = inEngine.getNumValues();
+        numIDs = _numVars * _numValues;
+        _words = (numIDs + 63) / 64;
+
+        _values = new Value[numIDs];
+        _parent = new int[numIDs];
+        _size = new int[numIDs];
+        _varMask = new long[numIDs];
+        _member = new int[numIDs * _numVars];
+        _members = new long[numIDs * _words];
+        _excluded = new long[numIDs * _words];
+        _reason = new long[numIDs];
+        _exclReason = new long[numIDs];
+        _log = new long[256];
+
+        for (int v = 0; v < _numVars; v++) {
+            for (int i = 0; i < _numValues; i++) {
+                id = v * _numValues + i;
+                _values[id] = vars[v].getValueByIndex( i );
+                _parent[id] = id;
+                _size[id] = 1;
+                _varMask[id] = 1L << v;
+                _member[id * _numVars + v] = id;
+                _members[id * _words + (id >> 6)] = 1L << id;
+            }
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  rebuild -- work the classes out again from the matrices, which
+    //  SolverContext.restore() has just replaced.  Each YES joins two
+    //  classes and each NO excludes one value from the other's class.
+    //  Nothing is written to the matrices, since the snapshot already has
+    //  all the cells the classes would have set, and there's nothing to
+    //  undo back to.
+    //----------------------------------------------------------------------
+    void rebuild()
+    {
+        RelationMatrix matrix;
+        int id, idA, idB, rootA, rootB;
+        long reason;
+
+        for (id = 0; id < _parent.length; id++) {
+            _parent[id] = id;
+            _size[id] = 1;
+            _varMask[id] = 1L << (id / _numValues);
+            _member[id * _numVars + id / _numValues] = id;
+            _reason[id] = 0;
+            _exclReason[id] = 0;
+            for (int w = 0; w < _words; w++) {
+                _members[id * _words + w] = 0;
+                _excluded[id * _words + w] = 0;
+            }
+            _members[id * _words + (id >> 6)] = 1L << id;
+        }
+
+        for (int pass = RelationMatrix.YES; pass <= RelationMatrix.NO; pass++) {
+            for (int i = 0; i < _context.getMatrixCount(); i++) {
+                matrix = _context.getMatrix( i );
+                for (int x = 0; x < matrix.getSize(); x++) {
+                    for (int y = 0; y < matrix.getSize(); y++) {
+                        if (matrix.getCell( x, y ) != pass)
+                            continue;
+                        idA = getID( matrix.getVariableA().getValueByIndex( x ));
+                        idB = getID( matrix.getVariableB().getValueByIndex( y ));
+                        rootA = find( idA );
+                        rootB = find( idB );
+                        reason = matrix.getReason( x, y );
+                        if (pass == RelationMatrix.YES) {
+                            if (rootA != rootB)
+                                union( rootA, rootB, reason );
+                        } else {
+                            reason |= _reason[rootA] | _reason[rootB];
+                            _excluded[rootA * _words + (idB >> 6)] |= 1L << idB;
+                            _excluded[rootB * _words + (idA >> 6)] |= 1L << idA;
+                            _exclReason[rootA] |= reason;
+                            _exclReason[rootB] |= reason;
+                        }
+                    }
+                }
+            }
+        }
+        _logSize = 0;
+    }
+
+    int getID( Value inValue )
+    {
+        return inValue.getVariable().getIndex() * _numValues + inValue.getIndex();
+    }
+
+    int find( int inID )
+    {
+        while (_parent[inID] != inID)
+            inID = _parent[inID];
+        return inID;
+    }
+
+    //----------------------------------------------------------------------
+    //  join -- these two values were just related.  Join their classes and
+    //  relate everything in one to everything in the other, and to none of
+    //  what the other excludes.
+    //----------------------------------------------------------------------
+    void join( Value inValueA, Value inValueB, long inReason )
+        throws Exception
+    {
+        int rootA = find( getID( inValueA ));
+        int rootB = find( getID( inValueB ));
+
+        if (rootA == rootB)
+            return;
+
+        long reason = inReason | _reason[rootA] | _reason[rootB];
+
+        if ((_varMask[rootA] & _varMask[rootB]) != 0)
+            throw new LogicFailureException( inValueA + " and " + inValueB +
+                                             " have different values of one variable", reason );
+        if (overlaps( _excluded, rootA, _members, rootB ) ||
+            overlaps( _excluded, rootB, _members, rootA ))
+            throw new LogicFailureException( inValueA + " and " + inValueB + " can't be related",
+                                             reason | _exclReason[rootA] | _exclReason[rootB] );
+
+        long varsA = _varMask[rootA], varsB = _varMask[rootB];
+        long exclReasonA = _exclReason[rootA], exclReasonB = _exclReason[rootB];
+        long excludedA[] = copyBits( _excluded, rootA );
+        long excludedB[] = copyBits( _excluded, rootB );
+
+        int root = union( rootA, rootB, reason );
+
+        // every pair across the two classes is related
+        Value valueA, valueB;
+        long reasonA;
+        for (long a = varsA; a != 0; a &= a - 1) {
+            valueA = _values[_member[root * _numVars + Long.numberOfTrailingZeros( a )]];
+            reasonA = inReason | getTie( valueA, inValueA, RelationMatrix.YES, reason );
+            for (long b = varsB; b != 0; b &= b - 1) {
+                valueB = _values[_member[root * _numVars + Long.numberOfTrailingZeros( b )]];
+                getMatrix( valueA, valueB ).setRelation( valueA, valueB,
+                    reasonA | getTie( inValueB, valueB, RelationMatrix.YES, reason ));
+            }
+        }
+
+        // and each side is unrelated to what the other side excluded
+        excludeAll( root, varsA, inValueA, inValueB, excludedB,
+                    inReason, reason | exclReasonB );
+        excludeAll( root, varsB, inValueB, inValueA, excludedA,
+                    inReason, reason | exclReasonA );
+    }
+
+    //----------------------------------------------------------------------
+    //  separate -- these two values were just found unrelated, so their
+    //  classes can't be joined: nothing in one is related to anything in
+    //  the other.
+    //----------------------------------------------------------------------
+    void separate( Value inValueA, Value inValueB, long inReason )
+        throws Exception
+    {
+        int rootA = find( getID( inValueA ));
+        int rootB = find( getID( inValueB ));
+
+        if (rootA == rootB)
+            throw new LogicFailureException( inValueA + " and " + inValueB +
+                                             " are already related",
+                                             inReason | _reason[rootA] );
+
+        // already known?
+        if (contains( _excluded, rootA, _members, rootB ) &&
+            contains( _excluded, rootB, _members, rootA ))
+            return;
+
+        long reason = inReason | _reason[rootA] | _reason[rootB];
+
+        pushBits( _excluded, rootA );
+        pushBits( _excluded, rootB );
+        push( _exclReason[rootA] );
+        push( _exclReason[rootB] );
+        push( header( kSeparate, rootA, rootB ));
+        _context.recordClassChange();
+
+        orBits( _excluded, rootA, _members, rootB );
+        orBits( _excluded, rootB, _members, rootA );
+        _exclReason[rootA] |= reason;
+        _exclReason[rootB] |= reason;
+
+        Value valueA, valueB;
+        long reasonA;
+        for (long a = _varMask[rootA]; a != 0; a &= a - 1) {
+            valueA = _values[_member[rootA * _numVars + Long.numberOfTrailingZeros( a )]];
+            reasonA = inReason | getTie( valueA, inValueA, RelationMatrix.YES, reason );
+            for (long b = _varMask[rootB] & ~(a & -a); b != 0; b &= b - 1) {
+                valueB = _values[_member[rootB * _numVars + Long.numberOfTrailingZeros( b )]];
+                getMatrix( valueA, valueB ).setNoRelation( valueA, valueB,
+                    reasonA | getTie( inValueB, valueB, RelationMatrix.YES, reason ));
+            }
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  union -- make the smaller class part of the larger.  Returns the
+    //  new root.
+    //----------------------------------------------------------------------
+    int union( int inRootA, int inRootB, long inReason )
+    {
+        int root = inRootA, child = inRootB;
+
+        if (_size[root] < _size[child]) {
+            root = inRootB;
+            child = inRootA;
+        }
+
+        pushBits( _excluded, root );
+        pushBits( _members, root );
+        push( _varMask[root] );
+        push( _reason[root] );
+        push( _exclReason[root] );
+        push( header( kJoin, root, child ));
+        _context.recordClassChange();
+
+        _parent[child] = root;
+        _size[root] += _size[child];
+        for (long v = _varMask[child]; v != 0; v &= v - 1) {
+            int var = Long.numberOfTrailingZeros( v );
+            _member[root * _numVars + var] = _member[child * _numVars + var];
+        }
+        _varMask[root] |= _varMask[child];
+        orBits( _members, root, _members, child );
+        orBits( _excluded, root, _excluded, child );
+        _reason[root] |= _reason[child] | inReason;
+        _exclReason[root] |= _exclReason[child];
+        return root;
+    }
+
+    //----------------------------------------------------------------------
+    //  excludeAll -- the values of these variables in the class, the side
+    //  of inValue, are unrelated to everything in inExcluded, which the
+    //  side of inOther excluded, bar their own variables.  inJoinReason is
+    //  what relating inValue to inOther depended on.
+    //----------------------------------------------------------------------
+    void excludeAll( int inRoot, long inVars, Value inValue, Value inOther,
+                     long inExcluded[], long inJoinReason, long inClassReason )
+        throws Exception
+    {
+        Value value, other;
+        long reason;
+
+        for (long v = inVars; v != 0; v &= v - 1) {
+            value = _values[_member[inRoot * _numVars + Long.numberOfTrailingZeros( v )]];
+            reason = inJoinReason | getTie( value, inValue, RelationMatrix.YES, inClassReason );
+
+            for (int w = 0; w < _words; w++) {
+                for (long bits = inExcluded[w]; bits != 0; bits &= bits - 1) {
+                    other = _values[(w << 6) + Long.numberOfTrailingZeros( bits )];
+                    if (other.getVariable() == value.getVariable())
+                        continue;
+                    // a value of inOther's variable is ruled out by inOther itself
+                    if (other.getVariable() == inOther.getVariable())
+                        getMatrix( value, other ).setNoRelation( value, other, reason );
+                    else
+                        getMatrix( value, other ).setNoRelation( value, other, reason |
+                            getTie( inOther, other, RelationMatrix.NO, inClassReason ));
+                }
+            }
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  getTie -- the guess levels the cell between two values depends on
+    //  if it's set to inWhat, else inOtherwise.  A value is tied to itself
+    //  by nothing.
+    //----------------------------------------------------------------------
+    long getTie( Value inValueA, Value inValueB, int inWhat, long inOtherwise )
+    {
+        if (inValueA == inValueB)
+            return 0;
+
+        RelationMatrix mat = getMatrix( inValueA, inValueB );
+        int x = inValueA.getIndex(), y = inValueB.getIndex();
+
+        if (mat.getVariableA() != inValueA.getVariable()) {
+            x = inValueB.getIndex();
+            y = inValueA.getIndex();
+        }
+        return (mat.getCell( x, y ) == inWhat) ? mat.getReason( x, y ) : inOtherwise;
+    }
+
+    RelationMatrix getMatrix( Value inValueA, Value inValueB )
+    {
+        return _matrixTable[inValueA.getVariable().getIndex()][inValueB.getVariable().getIndex()];
+    }
+
+    //----------------------------------------------------------------------
+    //  undo -- take back the latest change.  SolverContext.rewind() calls
+    //  this for each of our markers on its trail.
+    //----------------------------------------------------------------------
+    void undo()
+    {
+        long header = pop();
+        int type = (int) (header >>> 40);
+        int a = (int) (header >>> 20) & 0xFFFFF;
+        int b = (int) header & 0xFFFFF;
+
+        if (type == kJoin) {            // a is the root, b the child
+            _exclReason[a] = pop();
+            _reason[a] = pop();
+            _varMask[a] = pop();
+            popBits( _members, a );
+            popBits( _excluded, a );
+            _parent[b] = b;
+            _size[a] -= _size[b];
+        } else {                        // kSeparate
+            _exclReason[b] = pop();
+            _exclReason[a] = pop();
+            popBits( _excluded, b );
+            popBits( _excluded, a );
+        }
+    }
+
+    static long header( int inType, int inA, int inB )
+    {
+        return ((long) inType << 40) | ((long) inA << 20) | inB;
+    }
+
+    //----------------------------------------------------------------------
+    //  bitset and log helpers.  A bitset is _words longs at root * _words.
+    //----------------------------------------------------------------------
+    boolean overlaps( long inBits[], int inRoot, long inOther[], int inOtherRoot )
+    {
+        for (int w = 0; w < _words; w++)
+            if ((inBits[inRoot * _words + w] & inOther[inOtherRoot * _words + w]) != 0)
+                return true;
+        return false;
+    }
+
+    //  true if inBits has all of inOther
+    boolean contains( long inBits[], int inRoot, long inOther[], int inOtherRoot )
+    {
+        for (int w = 0; w < _words; w++)
+            if ((inOther[inOtherRoot * _words + w] & ~inBits[inRoot * _words + w]) != 0)
+                return false;
+        return true;
+    }
+
+    void orBits( long inBits[], int inRoot, long inOther[], int inOtherRoot )
+    {
+        for (int w = 0; w < _words; w++)
+            inBits[inRoot * _words + w] |= inOther[inOtherRoot * _words + w];
+    }
+
+    long[] copyBits( long inBits[], int inRoot )
+    {
+        long bits[] = new long[_words];
+        System.arraycopy( inBits, inRoot * _words, bits, 0, _words );
+        return bits;
+    }
+
+    void pushBits( long inBits[], int inRoot )
+    {
+        for (int w = 0; w < _words; w++)
+            push( inBits[inRoot * _words + w] );
+    }
+
+    void popBits( long inBits[], int inRoot )
+    {
+        for (int w = _words - 1; w >= 0; w--)
+            inBits[inRoot * _words + w] = pop();
+    }
+
+    void push( long inValue )
+    {
+        if (_logSize == _log.length) {
+            long log[] = new long[_logSize * 2];
+            System.arraycopy( _log, 0, log, 0, _logSize );
+            _log = log;
+        }
+        _log[_logSize++] = inValue;
+    }
+
+    long pop()      { return _log[--_logSize]; }
+
+}   // end of class definition
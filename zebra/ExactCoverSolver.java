@@ -0,0 +1,554 @@
+//----------------------------------------------------------------------
+//  ExactCoverSolver
+//
+//  Solves a puzzle as an exact cover problem, with Knuth's Dancing
+//  Links (Algorithm X), instead of with relation matrices and guesses.
+//  Every value has to be at exactly one position and every position
+//  has exactly one value of each variable, so the options are "value v
+//  at position p" and each covers two items, "v is placed" and "v's
+//  variable has a value at p".
+//
+//  The clues are the same LogicEngine compiles.  Clues relating two
+//  values become secondary items: for clue c between a and b there's an
+//  item per position p, which option (a, p) covers, as do the options
+//  (b, q) for every q that p rules out.  Picking either option then
+//  hides the options of the other value it's incompatible with.  Clues
+//  about a position, e.g. IS_LOCATED, just leave options out.
+//
+//  BETWEEN is about three values, which items can't say.  Its values
+//  are kept apart by pairs, and each option picked is checked against
+//  the BETWEEN clues whose values are all placed by then.
+//
+//  The answer is written back into a LogicEngine's matrices, so it's
+//  read the same way, with getSolutionString().  Where a puzzle has
+//  more than one solution this may well find a different one first.
+//----------------------------------------------------------------------
+
+import java.util.*;
+
+public class ExactCoverSolver
+{
+    static final int kSame = -1;    // relation of values that are one entity
+    static final int kApart = -2;   // of values at different positions
+
+    int         _numValues;
+    String      _clues[];
+    LogicEngine _engine;            // parses the clues and holds the answer
+    Variable    _positionVar;
+    Vector      _vars;              // every variable but the position
+    long        _domain[];          // [var * n + value], positions left to it
+    Vector      _pairs;             // int[] { a, b, relation, distance } of value ids
+    Vector      _between;           // BETWEEN clues
+
+    // the links.  Node 0 is the root, then a header for each item, then
+    // the options' nodes.  Secondary items aren't on the root's list.
+    int         _left[], _right[], _up[], _down[];
+    int         _top[];             // [node], its item, or for a header its size
+    int         _optionOf[];        // [node], option the node is in
+    int         _numNodes;
+
+    int         _placed[];          // [var * n + value], position in the answer, or -1
+    long        _nodesTried = 0;    // options tried, like the engine's guesses
+    long        _nodeLimit = Long.MAX_VALUE;    // for countSolutions()
+    long        _updates = 0;       // links changed
+
+    //----------------------------------------------------------------------
+    //  Constructor -- same arguments as LogicEngine's.
+    //----------------------------------------------------------------------
+    public ExactCoverSolver( int inNumValues, String inClues[] )
+    {
+        _numValues = inNumValues;
+        _clues = inClues;
+    }
+
+    public long getNodesTried()     { return _nodesTried; }
+    public void setNodeLimit( long inLimit )    { _nodeLimit = inLimit; }
+    public long getUpdates()        { return _updates; }
+
+    //----------------------------------------------------------------------
+    //  solve -- return an engine holding the answer, to read the solution
+    //  from.  Throws, like LogicEngine.solve(), if the clues are bad or
+    //  there's no solution.
+    //----------------------------------------------------------------------
+    public LogicEngine solve()
+        throws Exception
+    {
+        build();
+        if (!search())
+            throw new LogicFailureException("Could not make any logically consistent guesses");
+
+        // write the answer into the engine, which fills in the rest
+        Variable var;
+        for (int v = 0; v < _vars.size(); v++) {
+            var = (Variable) _vars.elementAt( v );
+            for (int i = 0; i < _numValues; i++)
+                var.getValueByIndex( i ).setRelation(
+                    _positionVar.getValueByIndex( _placed[v * _numValues + i] ));
+        }
+        _engine.findAnswerClue();
+        return _engine;
+    }
+
+    //----------------------------------------------------------------------
+    //  countSolutions -- like LogicEngine.countSolutions(): 0, 1, ...
+    //  inCutoff, where inCutoff means that many or more.  If more options
+    //  than the node limit have to be tried the answer is inCutoff too,
+    //  for "can't tell".  Throws if the clues are bad.
+    //----------------------------------------------------------------------
+    public int countSolutions( int inCutoff )
+        throws Exception
+    {
+        build();
+        return count( inCutoff );
+    }
+
+    //  build -- parse the clues and link up the options
+    void build()
+        throws Exception
+    {
+        _engine = new LogicEngine( _numValues, _clues );
+        _engine.buildVarList( _clues );
+        _engine.initRelationMatrices();
+
+        compile( _engine.compileClues( _clues ));
+        narrowDomains();
+        buildLinks();
+
+        _placed = new int[_domain.length];
+        for (int i = 0; i < _placed.length; i++)
+            _placed[i] = -1;
+    }
+
+    //----------------------------------------------------------------------
+    //  compile -- sort the clues into positions values can't have and
+    //  pairs of values whose positions depend on each other.
+    //----------------------------------------------------------------------
+    void compile( Vector inConstraints )
+        throws Exception
+    {
+        Variable varList[] = _engine.getVarList();
+        long all = (_numValues == 64) ? -1L : (1L << _numValues) - 1;
+
+        _positionVar = _engine.getPositionVariable();
+        _vars = new Vector();
+        for (int i = 0; i < varList.length; i++) {
+            if (varList[i] == _positionVar)
+                continue;
+            if (varList[i].getValueCount() != _numValues)
+                throw new Exception("ERROR: " + varList[i].getName() + " has " +
+                                    varList[i].getValueCount() + " values, not " + _numValues );
+            _vars.addElement( varList[i] );
+        }
+
+        _domain = new long[_vars.size() * _numValues];
+        for (int i = 0; i < _domain.length; i++)
+            _domain[i] = all;
+        _pairs = new Vector();
+        _between = new Vector();
+
+        Constraint constraint;
+
+        for (Enumeration e = inConstraints.elements(); e.hasMoreElements(); ) {
+            constraint = (Constraint) e.nextElement();
+
+            if (constraint instanceof RelationConstraint) {
+                RelationConstraint clue = (RelationConstraint) constraint;
+                addPair( clue.getValueA(), clue.getValueB(), kSame, 0 );
+                continue;
+            }
+
+            RelativePositionConstraint clue = (RelativePositionConstraint) constraint;
+            if (clue.getRelation() == RelativePositionConstraint.BETWEEN) {
+                addPair( clue.getValueA(), clue.getValueB(), kApart, 0 );
+                addPair( clue.getValueA(), clue.getValueC(), kApart, 0 );
+                addPair( clue.getValueB(), clue.getValueC(), kApart, 0 );
+                _between.addElement( clue );
+            } else
+                addPair( clue.getValueA(), clue.getValueB(), clue.getRelation(),
+                         clue.getDistance() );
+        }
+    }
+
+    //  addPair -- a clue between two values, or a position and a value
+    void addPair( Value inValueA, Value inValueB, int inRelation, int inDistance )
+        throws Exception
+    {
+        if ((inValueA.getVariable() == _positionVar) || (inValueB.getVariable() == _positionVar))
+            restrictToPosition( inValueA, inValueB, inRelation, inDistance );
+        else if (inValueA != inValueB)
+            _pairs.addElement( new int[] { getID( inValueA ), getID( inValueB ),
+                                           inRelation, inDistance });
+        else if (inRelation != kSame)
+            throw new LogicFailureException( inValueA + " can't be beside itself");
+    }
+
+    //----------------------------------------------------------------------
+    //  restrictToPosition -- a clue with a position on one side or both
+    //  just takes positions away.
+    //----------------------------------------------------------------------
+    void restrictToPosition( Value inValueA, Value inValueB, int inRelation, int inDistance )
+        throws Exception
+    {
+        boolean fixedA = (inValueA.getVariable() == _positionVar);
+        boolean fixedB = (inValueB.getVariable() == _positionVar);
+        long allowed = 0;
+
+        if (fixedA && fixedB) {
+            if (!isCompatible( inRelation, inDistance, inValueA.getIndex(), inValueB.getIndex() ))
+                throw new LogicFailureException( inValueA + " and " + inValueB +
+                                                 " don't fit the clue");
+            return;
+        }
+
+        for (int p = 0; p < _numValues; p++) {
+            if (fixedA ? isCompatible( inRelation, inDistance, inValueA.getIndex(), p )
+                       : isCompatible( inRelation, inDistance, p, inValueB.getIndex() ))
+                allowed |= 1L << p;
+        }
+        _domain[getID( fixedA ? inValueB : inValueA )] &= allowed;
+    }
+
+    //----------------------------------------------------------------------
+    //  narrowDomains -- drop positions with no partner position left in
+    //  some pair, until there are none.  Not needed for the answer, but it
+    //  saves building options that can only fail.
+    //----------------------------------------------------------------------
+    void narrowDomains()
+        throws Exception
+    {
+        boolean changed = true;
+        int pair[];
+
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < _pairs.size(); i++) {
+                pair = (int[]) _pairs.elementAt( i );
+                changed |= narrow( pair[0], pair[1], pair, true );
+                changed |= narrow( pair[1], pair[0], pair, false );
+            }
+            for (int i = 0; i < _between.size(); i++)
+                changed |= narrowBetween( (RelativePositionConstraint) _between.elementAt( i ));
+        }
+        for (int i = 0; i < _domain.length; i++)
+            if (_domain[i] == 0)
+                throw new LogicFailureException("No position left for " + getValue( i ));
+    }
+
+    boolean narrow( int inID, int inOther, int inPair[], boolean inFirst )
+    {
+        long supported = 0;
+
+        for (long d = _domain[inID]; d != 0; d &= d - 1) {
+            int p = Long.numberOfTrailingZeros( d );
+            for (long o = _domain[inOther]; o != 0; o &= o - 1) {
+                int q = Long.numberOfTrailingZeros( o );
+                if (inFirst ? isCompatible( inPair[2], inPair[3], p, q )
+                            : isCompatible( inPair[2], inPair[3], q, p )) {
+                    supported |= 1L << p;
+                    break;
+                }
+            }
+        }
+        if (supported == _domain[inID])
+            return false;
+        _domain[inID] = supported;
+        return true;
+    }
+
+    //  narrowBetween -- the same for a BETWEEN clue, whose values may
+    //  include positions
+    boolean narrowBetween( RelativePositionConstraint inClue )
+        throws Exception
+    {
+        Value values[] = inClue.getValues();
+        long domain[] = inClue._domain;
+        long support[] = inClue._support;
+        boolean changed = false;
+        int id;
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].getVariable() == _positionVar)
+                domain[i] = 1L << values[i].getIndex();
+            else
+                domain[i] = _domain[getID( values[i] )];
+        }
+
+        inClue.findSupport( domain, support, (_numValues == 64) ? -1L : (1L << _numValues) - 1 );
+
+        for (int i = 0; i < values.length; i++) {
+            if ((domain[i] & support[i]) == domain[i])
+                continue;
+            if (values[i].getVariable() == _positionVar)
+                throw new LogicFailureException( values[i] + " doesn't fit the clue");
+            id = getID( values[i] );
+            _domain[id] &= support[i];
+            changed = true;
+        }
+        return changed;
+    }
+
+    //----------------------------------------------------------------------
+    //  isCompatible -- can a be at position pa and b at pb, for a clue
+    //  "a relation b"?  The distance is DISTANCE's.
+    //----------------------------------------------------------------------
+    static boolean isCompatible( int inRelation, int inDistance, int pa, int pb )
+    {
+        switch (inRelation) {
+        case kSame:                                     return pa == pb;
+        case kApart:                                    return pa != pb;
+        case RelativePositionConstraint.NEXT_TO:        return Math.abs( pa - pb ) == 1;
+        case RelativePositionConstraint.DISTANCE:       return Math.abs( pa - pb ) == inDistance;
+        case RelativePositionConstraint.IMMED_RIGHT_OF: return pa == pb + 1;
+        case RelativePositionConstraint.IMMED_LEFT_OF:  return pa == pb - 1;
+        case RelativePositionConstraint.LEFT_OF:        return pa < pb;
+        case RelativePositionConstraint.RIGHT_OF:       return pa > pb;
+        default:                                        return false;
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  place -- put the value of this option at its position, for the
+    //  BETWEEN clues.  False if one of them is broken now.
+    //----------------------------------------------------------------------
+    boolean place( int inNode )
+    {
+        _placed[_optionOf[inNode] / _numValues] = _optionOf[inNode] % _numValues;
+
+        RelativePositionConstraint clue;
+        int pa, pb, pc;
+
+        for (int i = 0; i < _between.size(); i++) {
+            clue = (RelativePositionConstraint) _between.elementAt( i );
+            pa = getPlaced( clue.getValueA() );
+            pb = getPlaced( clue.getValueB() );
+            pc = getPlaced( clue.getValueC() );
+            if ((pa >= 0) && (pb >= 0) && (pc >= 0) &&
+                !(((pb < pa) && (pa < pc)) || ((pc < pa) && (pa < pb))))
+                return false;
+        }
+        return true;
+    }
+
+    void unplace( int inNode )
+    {
+        _placed[_optionOf[inNode] / _numValues] = -1;
+    }
+
+    //  the position of a value, if it has been placed, else -1
+    int getPlaced( Value inValue )
+    {
+        if (inValue.getVariable() == _positionVar)
+            return inValue.getIndex();
+        return _placed[getID( inValue )];
+    }
+
+    //----------------------------------------------------------------------
+    //  buildLinks -- make the items and an option for every position left
+    //  to every value.
+    //----------------------------------------------------------------------
+    void buildLinks()
+    {
+        int numIDs = _domain.length;
+        int numPrimary = 2 * numIDs;            // placed items, then position items
+        int numItems = numPrimary + _pairs.size() * _numValues;
+        Vector options = new Vector();          // int[] of items, option id last
+        int items[], count, pair[];
+
+        for (int id = 0; id < numIDs; id++) {
+            for (long d = _domain[id]; d != 0; d &= d - 1) {
+                int p = Long.numberOfTrailingZeros( d );
+                items = new int[2 + _pairs.size() * _numValues + 1];
+                items[0] = id;
+                items[1] = numIDs + (id / _numValues) * _numValues + p;
+                count = 2;
+
+                for (int c = 0; c < _pairs.size(); c++) {
+                    pair = (int[]) _pairs.elementAt( c );
+                    if (pair[0] == id)
+                        items[count++] = numPrimary + c * _numValues + p;
+                    if (pair[1] == id) {
+                        for (long o = _domain[pair[0]]; o != 0; o &= o - 1) {
+                            int q = Long.numberOfTrailingZeros( o );
+                            if (!isCompatible( pair[2], pair[3], q, p ))
+                                items[count++] = numPrimary + c * _numValues + q;
+                        }
+                    }
+                }
+                int option[] = new int[count + 1];
+                System.arraycopy( items, 0, option, 0, count );
+                option[count] = id * _numValues + p;
+                options.addElement( option );
+            }
+        }
+
+        int size = 1 + numItems;
+        for (int i = 0; i < options.size(); i++)
+            size += ((int[]) options.elementAt( i )).length - 1;
+
+        _left = new int[size];
+        _right = new int[size];
+        _up = new int[size];
+        _down = new int[size];
+        _top = new int[size];
+        _optionOf = new int[size];
+
+        // headers, the primary ones in a ring with the root
+        for (int h = 0; h <= numItems; h++) {
+            _up[h] = _down[h] = h;
+            _top[h] = 0;
+            if ((h == 0) || (h <= numPrimary)) {
+                _left[h] = (h == 0) ? numPrimary : h - 1;
+                _right[h] = (h == numPrimary) ? 0 : h + 1;
+            } else
+                _left[h] = _right[h] = h;
+        }
+        _numNodes = numItems + 1;
+
+        int option[], first, node, item;
+        for (int i = 0; i < options.size(); i++) {
+            option = (int[]) options.elementAt( i );
+            first = _numNodes;
+            for (int j = 0; j < option.length - 1; j++) {
+                node = _numNodes++;
+                item = option[j] + 1;
+                _top[node] = item;
+                _optionOf[node] = option[option.length - 1];
+                _up[node] = _up[item];
+                _down[node] = item;
+                _down[_up[item]] = node;
+                _up[item] = node;
+                _top[item]++;
+                _left[node] = (j == 0) ? node : node - 1;       // ring of the option's nodes
+                _right[_left[node]] = node;
+                _right[node] = first;
+                _left[first] = node;
+            }
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  search -- Algorithm X.  Cover the primary item with the fewest
+    //  options left and try each of them in turn.  Returns true once
+    //  every primary item is covered, with the answer in _placed.
+    //----------------------------------------------------------------------
+    boolean search()
+    {
+        if (_right[0] == 0)
+            return true;
+
+        int item = 0, best = Integer.MAX_VALUE;
+        for (int h = _right[0]; h != 0; h = _right[h]) {
+            if (_top[h] < best) {
+                best = _top[h];
+                item = h;
+            }
+        }
+        if (best == 0)
+            return false;
+
+        cover( item );
+        for (int r = _down[item]; r != item; r = _down[r]) {
+            _nodesTried++;
+            for (int j = _right[r]; j != r; j = _right[j])
+                cover( _top[j] );
+
+            if (place( r ) && search())
+                return true;
+
+            unplace( r );
+            for (int j = _left[r]; j != r; j = _left[j])
+                uncover( _top[j] );
+        }
+        uncover( item );
+        return false;
+    }
+
+    //----------------------------------------------------------------------
+    //  count -- search() on past the first solution, up to inCutoff of
+    //  them.  Returns how many it found.
+    //----------------------------------------------------------------------
+    int count( int inCutoff )
+    {
+        int item = 0, best = Integer.MAX_VALUE, found = 0;
+
+        if (_right[0] == 0)
+            return 1;
+        if (_nodesTried > _nodeLimit)
+            return inCutoff;        // given up
+
+        for (int h = _right[0]; h != 0; h = _right[h]) {
+            if (_top[h] < best) {
+                best = _top[h];
+                item = h;
+            }
+        }
+        if (best == 0)
+            return 0;
+
+        cover( item );
+        for (int r = _down[item]; (r != item) && (found < inCutoff); r = _down[r]) {
+            _nodesTried++;
+            for (int j = _right[r]; j != r; j = _right[j])
+                cover( _top[j] );
+
+            if (place( r ))
+                found += count( inCutoff - found );
+
+            unplace( r );
+            for (int j = _left[r]; j != r; j = _left[j])
+                uncover( _top[j] );
+        }
+        uncover( item );
+        return found;
+    }
+
+    void cover( int inItem )
+    {
+        _right[_left[inItem]] = _right[inItem];
+        _left[_right[inItem]] = _left[inItem];
+
+        for (int i = _down[inItem]; i != inItem; i = _down[i]) {
+            for (int j = _right[i]; j != i; j = _right[j]) {
+                _down[_up[j]] = _down[j];
+                _up[_down[j]] = _up[j];
+                _top[_top[j]]--;
+                _updates++;
+            }
+        }
+    }
+
+    void uncover( int inItem )
+    {
+        for (int i = _up[inItem]; i != inItem; i = _up[i]) {
+            for (int j = _left[i]; j != i; j = _left[j]) {
+                _top[_top[j]]++;
+                _down[_up[j]] = j;
+                _up[_down[j]] = j;
+            }
+        }
+
+        _right[_left[inItem]] = inItem;
+        _left[_right[inItem]] = inItem;
+    }
+
+    //----------------------------------------------------------------------
+    //  getID, getValue -- values by number, variable * n + value index,
+    //  not counting the position variable.
+    //----------------------------------------------------------------------
+    int getID( Value inValue )
+    {
+        return _vars.indexOf( inValue.getVariable() ) * _numValues + inValue.getIndex();
+    }
+
+    Value getValue( int inID )
+    {
+        return ((Variable) _vars.elementAt( inID / _numValues )).getValueByIndex( inID % _numValues );
+    }
+
+    public String toString()
+    {
+        return "ExactCoverSolver: " + _vars.size() + " variables, " + _pairs.size() +
+               " pairs, " + _numNodes + " nodes";
+    }
+
+}   // end of class definition
@@ -18,14 +18,33 @@ public class LogicEngine implements Runnable
     int             _numValues;     // number of values each variable can have
     Variable        _varList[];     // list of problem's variables and their values
     RelationMatrix  _matrixList[];
+    RelationMatrix  _matrixTable[][];   // by variable index pair, null on the diagonal
+    Hashtable       _varTable;          // variables by name
+    Hashtable       _valueTable;        // values by name, first variable's wins
     String          _solution[];    // list of solution n-tuples
-    Vector          _relationList;  // user defined relations
     String          _clues[];
-    Vector          _relativeClues;     // clues that may need to be reapplied
-    boolean         _firstpass;         // true if first pass through clues
+    ClueCompiler    _compiler;          // turns clues into constraints
+    Vector          _constraints;       // compiled clues
+    int             _constraintChanges = 0; // bumped as clues come and go
+    PropagationQueue    _queue;         // relative clues that may need to be reapplied
+    Variable        _positionVar;       // implied "position" variable
     int             _answerID;          // clue id of ANSWER
     int             _currentClue;       // clue id we're currently working on
-    Stack           _markStack;         // list of undoable guesses we've made
+    Stack           _decisions;         // guesses we've made, latest on top
+    int             _guessMark = -1;    // trail mark before the first guess, or -1
+    Stack           _clueMarks;         // trail marks before each addClue()
+    SolverContext   _context;           // undo trail and activity for our matrices
+    ArcConsistency  _arcConsistency = null; // null if not propagating positions
+    boolean         _useArcConsistency = true;
+    boolean         _useBackjumping = true;
+    boolean         _useEntityClasses = false;
+    NogoodStore     _nogoods = null;    // null unless learning nogoods
+    boolean         _useClauseLearning = false;
+    BranchingStrategy   _branching;     // picks the cell to guess on
+    volatile boolean    _cancelled = false; // stop searching, see cancel()
+    int             _solutionCount = 0; // solutions found so far
+    boolean         _started = false;   // clues in, see start() and load()
+    SolverStatistics    _stats;         // work done on the last solve
 
     Variable    _solutionVar = null;        // variable to solve for (e.g. person owns zebra)
     String      _solutionValue = null;      // value variable should equal in solution
@@ -45,27 +64,72 @@ public class LogicEngine implements Runnable
         _varList = new Variable[_numVars];
         _solution = new String[_numVars];
         _matrixList = new RelationMatrix[ (_numVars * (_numVars-1))/2 ];    // n(n-1)/2
-        _relationList = new Vector();
-        _relativeClues = new Vector();
+        _matrixTable = new RelationMatrix[_numVars][_numVars];
+        _varTable = new Hashtable();
+        _valueTable = new Hashtable();
+        _compiler = new ClueCompiler( this );
+        _constraints = new Vector();
         _answerVariableOrder = new Vector();
-        _markStack = new Stack();
+        _decisions = new Stack();
+        _clueMarks = new Stack();
+        _context = new SolverContext();
+        _queue = new PropagationQueue( _numVars, _numValues );
+        _context.setPropagationQueue( _queue );
+        _stats = new SolverStatistics();
+        _context.setStatistics( _stats );
+        _branching = new RowMajorBranching();
     }
 
     //----------------------------------------------------------------------
     //  Accessors
     //----------------------------------------------------------------------
     public Variable[]   getVarList()    { return _varList; }
+    public RelationMatrix[] getMatrixList() { return _matrixList; }
     public int          getClueID()     { return _currentClue; }
     public int          getNumVars()    { return _numVars; }
     public int          getNumValues()  { return _numValues; }
+    public SolverContext getContext()   { return _context; }
+    public Variable     getPositionVariable()   { return _positionVar; }
+    public Vector       getConstraints()    { return _constraints; }
+    public int          getConstraintChanges()  { return _constraintChanges; }
+    public SolverStatistics getStatistics() { return _stats; }
+    public BranchingStrategy getBranchingStrategy() { return _branching; }
+    public Vector       getAnswerVariables()    { return _answerVariableOrder; }     // ANSWER order
 
+    //  Set before solving.  On by default.
+    public void setUseArcConsistency( boolean inFlag )  { _useArcConsistency = inFlag; }
+    public void setUseBackjumping( boolean inFlag )     { _useBackjumping = inFlag; }
+
+    //  Row-major by default, see BranchingStrategy.
+    public void setBranchingStrategy( BranchingStrategy inStrategy )    { _branching = inStrategy; }
+
+    //  Off by default: keep related values as EntityClasses rather than
+    //  walking the matrices for transitive relations.  Up to 64 variables.
+    public void setUseEntityClasses( boolean inFlag )   { _useEntityClasses = inFlag; }
+
+    //  Off by default: learn a nogood from each failure, see NogoodStore.
+    public void setUseClauseLearning( boolean inFlag )  { _useClauseLearning = inFlag; }
+
+    //----------------------------------------------------------------------
+    //  cancel -- give up a solve running on another thread.  The search
+    //  stops before its next guess and solve() throws.
     //----------------------------------------------------------------------
-    //  setWaitOnChange -- Say whether to sleep and wait to be woken when a
-    //  new relation occurs (for monitoring).
+    public void cancel()    { _cancelled = true; }
+    public boolean isCancelled()    { return _cancelled; }
+
+    //----------------------------------------------------------------------
+    //  add/removeSolverListener -- hear about every change the engine
+    //  makes as it works (for monitoring).  Listeners are called on the
+    //  engine's thread.
     //----------------------------------------------------------------------
-    public void setWaitOnChange( boolean inPauseFlag )
+    public void addSolverListener( SolverListener inListener )
+    {
+        _context.addSolverListener( inListener );
+    }
+
+    public void removeSolverListener( SolverListener inListener )
     {
-        RelationMatrix.setWaitOnChange( inPauseFlag );
+        _context.removeSolverListener( inListener );
     }
 
     //----------------------------------------------------------------------
@@ -74,9 +138,7 @@ public class LogicEngine implements Runnable
     public void run()
     {
         try {
-            buildVarList( _clues );     // first pass
-            initRelationMatrices();
-            generateSolution( _clues ); // second pass
+            solve();
         }
         catch (Exception ex) {
             System.err.println("Bad Clues: " + ex);
@@ -85,6 +147,20 @@ public class LogicEngine implements Runnable
         System.out.println("\nSOLUTION: \n" + getSolutionString() + "\n");
     }
 
+    //----------------------------------------------------------------------
+    //  solve -- build structures from clues and solve, without any output.
+    //  The engine is started as countSolutions() starts it, so either can
+    //  follow the other.  Throws if the clues are bad or inconsistent.
+    //----------------------------------------------------------------------
+    public void solve()
+        throws Exception
+    {
+        restart();
+        search();
+        _solutionCount = 1;
+        findAnswerClue();
+    }
+
     //----------------------------------------------------------------------
     //  isSolved -- determine if we've found a relation for all values.
     //----------------------------------------------------------------------
@@ -136,9 +212,357 @@ public class LogicEngine implements Runnable
     //----------------------------------------------------------------------
     public void generateSolution( String inClues[] )
         throws Exception
+    {
+        applyClues( inClues );
+        search();
+        _solutionCount = 1;
+        findAnswerClue();
+    }
+
+    //----------------------------------------------------------------------
+    //  countSolutions -- like solve(), but keep searching after the first
+    //  solution, stopping once inCutoff have been found.  Returns 0, 1,
+    //  ... inCutoff, where inCutoff means "that many or more", so a
+    //  cut-off of 2 tells none, one or many.  The engine is left holding
+    //  the last solution found.  Throws if the clues are bad.  Works on a
+    //  prepared engine too, clues added and all.
+    //----------------------------------------------------------------------
+    public int countSolutions( int inCutoff )
+        throws Exception
+    {
+        restart();
+        while ((_solutionCount < inCutoff) && findNextSolution())
+            ;
+        return _solutionCount;
+    }
+
+    //  hasUniqueSolution -- true if the clues allow exactly one answer
+    public boolean hasUniqueSolution()
+        throws Exception
+    {
+        return countSolutions( 2 ) == 1;
+    }
+
+    //----------------------------------------------------------------------
+    //  getAnswer -- what the SOLVE clue asks for in the solution found,
+    //  e.g. the person who owns the zebra, or null if that isn't known yet.
+    //----------------------------------------------------------------------
+    public Value getAnswer()
+        throws Exception
+    {
+        Value asked = getValueByName( _solutionValue );
+
+        if (asked.getVariable() == _solutionVar)
+            return asked;
+        return _solutionVar.getMatrixForVariable( asked.getVariable() ).findPositiveRelation( asked );
+    }
+
+    //----------------------------------------------------------------------
+    //  findOtherAnswer -- after a solution, look for one that answers the
+    //  SOLVE clue differently, i.e. is the question ambiguous?  Returns
+    //  true, holding that solution, if there is one.  The first answer is
+    //  ruled out as if it were a guess, so it's undone with the guesses.
+    //----------------------------------------------------------------------
+    public boolean findOtherAnswer()
+        throws Exception
+    {
+        Value asked = getValueByName( _solutionValue );
+        Value answer = getAnswer();
+
+        if ((answer == null) || (answer == asked))
+            return false;
+
+        undoGuesses();
+        _guessMark = _context.mark();
+        try {
+            _context.clearReason();
+            _solutionVar.getMatrixForVariable( asked.getVariable() ).setNoRelation( answer, asked );
+            search();
+        }
+        catch (LogicFailureException ex) {
+            return false;
+        }
+
+        _solutionCount = 1;
+        findAnswerClue();
+        return true;
+    }
+
+    //----------------------------------------------------------------------
+    //  solutions -- every solution of the clues, found one at a time as
+    //  they're asked for.  Throws if the clues are bad.
+    //
+    //  Ex:
+    //    for (SolutionEnumeration e = engine.solutions() ; e.hasMoreSolutions() ;)
+    //        String s = e.nextSolution();
+    //----------------------------------------------------------------------
+    public SolutionEnumeration solutions()
+        throws Exception
+    {
+        restart();
+        return new SolutionEnumeration( this );
+    }
+
+    //----------------------------------------------------------------------
+    //  start -- build structures from the clues and apply them, ready to
+    //  search.  The first pass and the first half of the second.
+    //----------------------------------------------------------------------
+    void start()
+        throws Exception
+    {
+        long time = System.nanoTime();
+
+        _started = true;
+        buildVarList( _clues );
+        time = _stats.endPhase( SolverStatistics.kBuild, time );
+        initRelationMatrices();
+        _stats.endPhase( SolverStatistics.kInit, time );
+        applyClues( _clues );
+    }
+
+    //----------------------------------------------------------------------
+    //  compile, start -- start() in two steps, for a caller that tells
+    //  clues that can't be read from clues that contradict each other.
+    //  compile() builds the structures and compiles the clues, SOLVE and
+    //  ANSWER included, and throws if any is bad.  start() then applies
+    //  what it returned, and throws at the first clue that contradicts
+    //  the ones before it.
+    //
+    //  Ex:
+    //    Vector constraints = engine.compile();    // bad clues
+    //    engine.start( constraints );              // no solution
+    //----------------------------------------------------------------------
+    Vector compile()
+        throws Exception
+    {
+        long time = System.nanoTime();
+
+        buildVarList( _clues );
+        time = _stats.endPhase( SolverStatistics.kBuild, time );
+        initRelationMatrices();
+        time = _stats.endPhase( SolverStatistics.kInit, time );
+        Vector constraints = compileClues( _clues );
+        _stats.endPhase( SolverStatistics.kBuild, time );
+        return constraints;
+    }
+
+    void start( Vector inConstraints )
+        throws Exception
+    {
+        long time = System.nanoTime();
+        Constraint constraint;
+
+        _started = true;
+        try {
+            for (int i = 0; i < inConstraints.size(); i++) {
+                constraint = (Constraint) inConstraints.elementAt( i );
+                _currentClue = constraint.getClueID();
+                applyConstraint( constraint );
+            }
+        }
+        finally {
+            _stats.endPhase( SolverStatistics.kPropagate, time );
+        }
+        _queue.enqueueAll();
+    }
+
+    //  load -- the compiled clues, part of the puzzle, but not applied:
+    //  for an engine whose cells are about to be restored from a snapshot
+    //  that has them applied already.
+    void load( Vector inConstraints )
+    {
+        _started = true;
+        for (int i = 0; i < inConstraints.size(); i++)
+            addConstraint( (Constraint) inConstraints.elementAt( i ));
+    }
+
+    //  restart -- start, or if we already have, forget any guesses
+    void restart()
+        throws Exception
+    {
+        if (_started)
+            undoGuesses();
+        else
+            start();
+    }
+
+    //----------------------------------------------------------------------
+    //  findNextSolution -- search on for another solution.  After the
+    //  first, the last solution is treated like a failure of every guess
+    //  that led to it, so the search backs up to the latest guess and
+    //  tries its other branch.  Returns false when there are no more.
+    //----------------------------------------------------------------------
+    boolean findNextSolution()
+        throws Exception
+    {
+        try {
+            if (_solutionCount > 0)
+                backtrack( new LogicFailureException("Looking for another solution",
+                                SolverContext.levelsUpTo( _decisions.size() )));
+            search();
+        }
+        catch (LogicFailureException ex) {
+            return false;
+        }
+
+        _solutionCount++;
+        findAnswerClue();
+        return true;
+    }
+
+    //----------------------------------------------------------------------
+    //  prepare, addClue, retractClue -- clues a few at a time, e.g. while
+    //  a puzzle is being written.  prepare() takes the engine as far as
+    //  its own clues go, without guessing.  addClue() then applies one
+    //  more clue and propagates just what follows from it, and returns
+    //  true if that leaves the puzzle solved.  retractClue() takes back
+    //  the most recently added clue by rewinding the undo trail to where
+    //  it was before that clue.
+    //
+    //  Only relation clues can be added; they must name values that are
+    //  already defined.  A clue that contradicts the others is retracted
+    //  again before addClue() throws.  If the engine has been guessing
+    //  (e.g. solve() was called) its guesses are undone first.
+    //
+    //  Ex:
+    //    engine.prepare();
+    //    engine.addClue("Japanese NEXT_TO zebra");  // false, not solved yet
+    //    engine.retractClue();
+    //----------------------------------------------------------------------
+    public void prepare()
+        throws Exception
+    {
+        start();
+        propagate();
+    }
+
+    public boolean addClue( String inClue )
+        throws Exception
+    {
+        undoGuesses();
+
+        Constraint constraint = _compiler.compile( inClue, _clues.length );
+        if (constraint == null)
+            throw new Exception("Not a relation clue: " + inClue );
+
+        // the clue becomes part of the puzzle, with the next clue id
+        String clues[] = new String[_clues.length + 1];
+        System.arraycopy( _clues, 0, clues, 0, _clues.length );
+        clues[_clues.length] = inClue;
+        _clues = clues;
+        _clueMarks.push( Integer.valueOf( _context.mark() ));
+        addConstraint( constraint );
+
+        try {
+            _currentClue = _clues.length - 1;
+            _context.clearReason();
+            constraint.apply( this );
+            propagate();
+        }
+        catch (LogicFailureException ex) {
+            retractClue();
+            throw ex;
+        }
+
+        return isSolved();
+    }
+
+    public void retractClue()
+        throws Exception
+    {
+        if (_clueMarks.empty())
+            throw new Exception("No clue to retract");
+
+        undoGuesses();
+
+        Constraint constraint = (Constraint) _constraints.lastElement();
+        _constraints.removeElementAt( _constraints.size() - 1 );
+        _constraintChanges++;
+        if (constraint instanceof RelativePositionConstraint)
+            _queue.removeLastClue();
+
+        _context.rewind( ((Integer) _clueMarks.pop()).intValue() );
+
+        String clues[] = new String[_clues.length - 1];
+        System.arraycopy( _clues, 0, clues, 0, clues.length );
+        _clues = clues;
+        _currentClue = _clues.length - 1;
+    }
+
+    //  undoGuesses -- back to where the clues alone left things.  What
+    //  was learned may rest on solutions found or clues about to go.  So
+    //  may what was set after backing up past the first guess, when there
+    //  was no guess left to undo it, so that goes too.
+    void undoGuesses()
+    {
+        if (_guessMark >= 0) {
+            _context.rewind( _guessMark );
+            _guessMark = -1;
+        }
+        _decisions.removeAllElements();
+        if (_nogoods != null)
+            _nogoods.clear();
+        _solutionCount = 0;
+    }
+
+    //----------------------------------------------------------------------
+    //  snapshot, restore -- every cell of every matrix, as one long array,
+    //  and back again.  Take a snapshot where propagation is done, e.g.
+    //  after prepare() or addClue(), and restore it into this engine or
+    //  any other built from the same clues.  An engine that hasn't started
+    //  only compiles its clues first, since the snapshot has them applied
+    //  already.  Restoring forgets any guesses.  It leaves the
+    //  clues alone: restoring a snapshot from before addClue() doesn't
+    //  take the clue back, and clues added so far can no longer be
+    //  retracted.  See SolverContext.writeImage() to keep one.
+    //
+    //  Ex:
+    //    engine.prepare();
+    //    long image[] = engine.snapshot();
+    //    engine.countSolutions( 2 );
+    //    engine.restore( image );      // back to where the clues left it
+    //----------------------------------------------------------------------
+    public long[] snapshot()
+    {
+        return _context.snapshot();
+    }
+
+    public void restore( long inImage[] )
+        throws Exception
+    {
+        if (!_started)
+            load( compile() );
+
+        _guessMark = -1;
+        _decisions.removeAllElements();
+        _clueMarks.removeAllElements();
+        if (_nogoods != null)
+            _nogoods.clear();
+        _solutionCount = 0;
+        _context.restore( inImage );
+    }
+
+    //----------------------------------------------------------------------
+    //  solveFrom -- solve from a snapshot, as if the clues had got that
+    //  far.  The same engine can solve from one snapshot after another.
+    //  See ParallelSolver.
+    //----------------------------------------------------------------------
+    void solveFrom( long inImage[] )
+        throws Exception
+    {
+        restore( inImage );
+        search();
+        findAnswerClue();
+    }
+
+    //----------------------------------------------------------------------
+    //  applyClues -- put each clue into the engine.  Throws if any is bad.
+    //----------------------------------------------------------------------
+    void applyClues( String inClues[] )
+        throws Exception
     {
         boolean validInput = true;
-        _firstpass = true;
+        long time = System.nanoTime();
 
         for (int i = 0; i < inClues.length; i++) {
             try {
@@ -150,170 +574,304 @@ public class LogicEngine implements Runnable
                 System.err.println( "ERROR: Clue # " + i + ":" + ex.getMessage() );
             }
         }
+        _stats.endPhase( SolverStatistics.kPropagate, time );
 
-        if (validInput) {
+        if (!validInput)
+            throw new Exception("ERROR: illegal input");
 
-            _firstpass = false;
+        if ((_solutionValue == null) || (_answerVariableOrder.size() == 0))
+            throw new Exception("Missing SOLVE or ANSWER tag.");
 
-            if ((_solutionValue == null) || (_answerVariableOrder.size() == 0))
-                throw new Exception("Missing SOLVE or ANSWER tag.");
+         // these clues depend on the current relations, so repply them whenever
+         // relation matrices change.  Make sure each has seen the whole
+         // first pass.
+        _queue.enqueueAll();
+    }
 
-             // these clues depend on the current relations, so repply them whenever
-             // relation matrices change
+    //----------------------------------------------------------------------
+    //  compileClues -- compile each clue without applying it, for a solver
+    //  that works from the constraints rather than the matrices, see
+    //  ExactCoverSolver.  The variables must be built.  Throws if any clue
+    //  is bad, like applyClues().
+    //----------------------------------------------------------------------
+    Vector compileClues( String inClues[] )
+        throws Exception
+    {
+        Vector constraints = new Vector();
+        boolean validInput = true;
+        Constraint constraint;
 
-            boolean solved = isSolved();
-            boolean guessing = false;
-            boolean undoGuess = false;
+        for (int i = 0; i < inClues.length; i++) {
+            try {
+                constraint = _compiler.compile( inClues[i], i );
+                if (constraint != null)
+                    constraints.addElement( constraint );
+            }
+            catch (Exception ex) {
+                validInput = false;
+                System.err.println( "ERROR: Clue # " + i + ":" + ex.getMessage() );
+            }
+        }
 
-            while (!solved) {
-                // go as far as we can with these clues and state
-                try {
-                    if (undoGuess) {
-                        undoGuessAndTryNext();
-                        undoGuess = false;
-                    }
+        if (!validInput)
+            throw new Exception("ERROR: illegal input");
 
-                    while (RelationMatrix.getChanged() == true) {
-                        reapplyRelativeClues();
-                        RelationMatrix.setChanged( false );
-                    }
+        if ((_solutionValue == null) || (_answerVariableOrder.size() == 0))
+            throw new Exception("Missing SOLVE or ANSWER tag.");
+        getValueByName( _solutionValue );       // throws if SOLVE names no value
 
-                    // if that didn't solve it, make a guess and try again
-                    if (!isSolved()) {
-                        guessing = true;
-                        makeGuess();
-                    } else
-                        solved = true;
-                }
-                catch (LogicFailureException ex) {
-                    // if we're here then there was a logic failure.
-                    // probably because of a bad guess
-                    if (!guessing)
-                        throw ex;
-                    else
-                        undoGuess = true;   // try again in try block.
+        return constraints;
+    }
 
-                }
+    //----------------------------------------------------------------------
+    //  search -- go as far as we can with the clues, guess when they run
+    //  out, and back up when a guess turns out bad, until solved.
+    //  Throws LogicFailureException if there's no solution, another
+    //  exception if the solve is cancelled.
+    //----------------------------------------------------------------------
+    void search()
+        throws Exception
+    {
+        long time = System.nanoTime();
+        long propagating = _stats._phaseTime[SolverStatistics.kPropagate];
+
+        try {
+            searchLoop();
+        }
+        finally {
+            // propagating while searching counts as propagating
+            _stats.endPhase( SolverStatistics.kSearch, time );
+            _stats._phaseTime[SolverStatistics.kSearch] -=
+                _stats._phaseTime[SolverStatistics.kPropagate] - propagating;
+        }
+    }
+
+    //  the search itself, timed by search()
+    void searchLoop()
+        throws Exception
+    {
+        LogicFailureException failure = null;
+
+        while (true) {
+            if (_cancelled)
+                throw new Exception("Solve cancelled");
+
+            // a bad guess, back up.  Throws if there's nothing to back up to.
+            if (failure != null) {
+                backtrack( failure );
+                failure = null;
             }
 
+            // go as far as we can with these clues and state.  Even when
+            // every cell is set the relative clues still have to agree.
+            try {
+                propagate();
 
-            // done.
-            for (int i = 0; i < _clues.length; i++ )
-                if (_clues[i].indexOf("ANSWER") > 0)
-                    _currentClue = i;
+                // if that didn't solve it, make a guess and try again
+                if (isSolved())
+                    return;
+                makeGuess();
+            }
+            catch (LogicFailureException ex) {
+                // if we're here then there was a logic failure.
+                // probably because of a bad guess
+                if (_decisions.empty())
+                    throw ex;
+                else
+                    failure = ex;       // back up next time round.
+            }
+        }
+    }
 
-        } else
-            throw new Exception("ERROR: illegal input");
+    //  done.  Point the current clue at the ANSWER.
+    void findAnswerClue()
+    {
+        for (int i = 0; i < _clues.length; i++ )
+            if (_clues[i].indexOf("ANSWER") > 0)
+                _currentClue = i;
+    }
+
+    //----------------------------------------------------------------------
+    //  propagate -- run the queued clues until the clues have nothing more
+    //  to say.  Only the clues that read a changed cell are queued, so this
+    //  costs in proportion to what changed, not to the size of the puzzle.
+    //  Learned nogoods get their say too, so they're checked before every
+    //  guess.
+    //----------------------------------------------------------------------
+    void propagate()
+        throws Exception
+    {
+        long time = System.nanoTime();
+
+        try {
+            do {
+                reapplyRelativeClues();
+            } while ((_nogoods != null) && _nogoods.propagate());
+        }
+        finally {
+            _stats.endPhase( SolverStatistics.kPropagate, time );
+        }
     }
 
     //----------------------------------------------------------------------
     //  reapplyRelativeClues -- clues that are relative need to be reapplied
-    //  after changes occur.  Make a single pass of these clues.
+    //  after changes occur.  Run the queued ones until nothing they read
+    //  changes any more.  With arc consistency on, each clue is also
+    //  revised against the position domains of its values.
     //----------------------------------------------------------------------
     void reapplyRelativeClues()
         throws Exception
     {
-        for (Enumeration e = _relativeClues.elements() ; e.hasMoreElements() ; ) {
-            String clue = (String) e.nextElement();
-            for (int i = 0; i < _clues.length; i++ )
-                if (_clues[i] == clue)
-                    _currentClue = i;
-            processRelation( clue );
+        RelativePositionConstraint clue;
+
+        while ((clue = _queue.next()) != null) {
+            _currentClue = clue.getClueID();
+            _stats._reapplications++;
+            _context.clearReason();
+            clue.apply( this );
+            if (_arcConsistency != null) {
+                _context.clearReason();
+                _arcConsistency.revise( clue );
+            }
         }
     }
 
 
     //----------------------------------------------------------------------
-    //  makeGuess -- Randomly choose a relation to make and see if it
-    //  results in a legal solution.
+    //  makeGuess -- Choose an unset relation, guess that it's true and see
+    //  if it results in a legal solution.  The branching strategy decides
+    //  which relation.
     //----------------------------------------------------------------------
     public void makeGuess()
         throws Exception
     {
-        SetCommand command;
+        SetCommand guess = _branching.chooseGuess( this );
 
-        System.out.println("Making a guess");
-    //  setWaitOnChange( true );
+        if (guess == null)
+            throw new Exception("Could not make any logically consistent guesses");
 
-        for (int i = 0; i < _matrixList.length; i++ ) {
-            if (!_matrixList[i].isFullyRelated()) {
-                _markStack.push( RelationMatrix.lastCommand() );    // set undo mark
-                command = _matrixList[i].setNextPositiveRelation();
-                return;
-            }
-        }
-        throw new Exception("Could not make any logically consistent guesses");
+        Decision decision = new Decision( _context.mark(), guess,   // undo mark
+                                          _decisions.size() + 1 );
+        if (_guessMark < 0)
+            _guessMark = decision.mark;
+        _decisions.push( decision );
+        _context.fireGuessPushed( decision.level );
+        _stats._guesses++;
+        _stats._maxDepth = Math.max( _stats._maxDepth, decision.level );
+        guess.matrix.set( guess.x, guess.y, RelationMatrix.YES,
+                          SolverContext.levelBit( decision.level ));
     }
 
     //----------------------------------------------------------------------
-    //  undoGuessAndTryNext -- Last guess was a bad one, undo all changes
-    //  back to that guess, then make a different, later guess.
+    //  backtrack -- A guess was a bad one.  Undo all changes back to that
+    //  guess.  Then the guessed relation must be false, so set it NO as if
+    //  it had been deduced before the guess was made.  If that fails too
+    //  then an earlier guess was bad as well, and so on.
+    //
+    //  Without backjumping the latest guess is the one undone.  With it
+    //  we jump straight back to the latest guess the failure depends on;
+    //  the guesses after that had nothing to do with it.
+    //
+    //  Throws if there's no guess left to undo, i.e. no consistent solution.
     //----------------------------------------------------------------------
-    public void undoGuessAndTryNext()
+    void backtrack( LogicFailureException inFailure )
         throws Exception
     {
-        SetCommand mark = (SetCommand) _markStack.pop();
-        SetCommand lastGuess, nextGuess;
-        boolean guessNow = false;
-
-        System.out.println("Undoing guess.  Making another one.");
-        Thread.yield();
-
-        // undo all commands up to, but not including the command before the
-        // last guess.  Get the first command made in that stream,
-        // i.e. the last guess.
-
-        lastGuess = RelationMatrix.undoToCommand( mark );
-
-        _markStack.push( RelationMatrix.lastCommand() );    // set undo mark
-
-        for (int i = 0; i < _matrixList.length; i++ ) {
-
-            // dont make a guess before the last guess
-            if (_matrixList[i] == lastGuess.matrix)
-                guessNow = true;
+        long conflict = inFailure.getConflict();
+        Decision decision;
+        int level, highest;
+
+        while (true) {
+            level = _decisions.size();
+            highest = SolverContext.highestLevel( conflict );
+            _stats._conflicts++;
+            if ((_nogoods != null) && (highest > 0) && (highest < SolverContext.kDeepLevel) &&
+                (highest <= _decisions.size()))
+                learnNogood( conflict );
+            if (_useBackjumping && (highest < SolverContext.kDeepLevel))
+                level = Math.min( level, highest );
+
+            // if there's no guess to blame then there's no consistent solution
+            if (level == 0)
+                throw new LogicFailureException("Could not make any logically consistent guesses", 0 );
+
+            // guesses after this one had nothing to do with it
+            _stats._backjumps += _decisions.size() - level;
+            do {
+                decision = (Decision) _decisions.pop();
+            } while (decision.level > level);
+
+            // undo everything set since just before the guess
+            _context.rewind( decision.mark );
+            _context.fireGuessPopped( level );
+            _stats._backtracks++;
+
+            // the guess failed because of these earlier guesses
+            if (level < SolverContext.kDeepLevel)
+                conflict &= ~SolverContext.levelBit( level );
 
-            if (guessNow) {
-                if (!_matrixList[i].isFullyRelated()) {
-                    nextGuess =
-                        _matrixList[i].setNextPositiveRelationAfter( lastGuess );
-
-                    if (nextGuess != null)  // successful guess
-                        return;
-                    // else keep going until a valid guess can be made
-                }
+            try {
+                decision.matrix.set( decision.x, decision.y, RelationMatrix.NO, conflict );
+                return;
+            }
+            catch (LogicFailureException ex) {
+                conflict = ex.getConflict();
             }
         }
+    }
 
-        // we've exhausted the guesses possible at this level, move up the
-        //  guess stack and try again.  If stack is empty then we're screwed.
-        //  Either no consistent solution or we've got an error.
-
-        if (!_markStack.empty()) {
-            undoGuessAndTryNext();
-        } else {
-            // if we got here, no guess was made.  Either an error or it's solved,
-            // but we shouldn't be called if it was solved.
-            throw new Exception("Could not make any logically consistent guesses");
+    //----------------------------------------------------------------------
+    //  learnNogood -- the guesses of these levels can't all be right.  Tell
+    //  the nogood store their cells, latest guess first.
+    //----------------------------------------------------------------------
+    void learnNogood( long inConflict )
+    {
+        int cells[] = new int[Long.bitCount( inConflict & ~1L )];
+        Decision decision;
+        int i = 0;
+
+        for (int level = SolverContext.highestLevel( inConflict ); level > 0; level--) {
+            if ((inConflict & SolverContext.levelBit( level )) != 0) {
+                decision = (Decision) _decisions.elementAt( level - 1 );
+                cells[i++] = SolverContext.pack( decision.matrix.getID(), decision.x,
+                                                 decision.y, RelationMatrix.YES );
+            }
         }
+        _nogoods.learn( cells );
     }
 
     //----------------------------------------------------------------------
     //  initRelationMatrices -- assign each variable pair a relation matrix.
     //----------------------------------------------------------------------
     void initRelationMatrices()
+        throws Exception
     {
         Variable variable;
         int matIndex = 0;
 
         for (int i = 0; i < _numVars; i++ ) {
             for (int j = i+1; j < _numVars; j++) {
-                RelationMatrix m = new RelationMatrix( _varList[i], _varList[j] );
+                RelationMatrix m = new RelationMatrix( _context, _varList[i], _varList[j] );
                 _varList[i].addMatrix( m );
                 _varList[j].addMatrix( m );
                 _matrixList[matIndex++] = m;
+                _matrixTable[i][j] = m;
+                _matrixTable[j][i] = m;
             }
         }
+        _positionVar = getVariableByName("@position");
+        _queue.setPositionVariable( _positionVar );
+
+        if (_useArcConsistency) {
+            _arcConsistency = new ArcConsistency( this );
+            _queue.setWatchPossible( true );
+        }
+        if (_useEntityClasses && (_numVars <= 64))
+            _context.setEntityClasses( new EntityClasses( this ));
+        if (_useClauseLearning) {
+            _nogoods = new NogoodStore( _context, _numValues, _stats );
+            _context.setNogoodStore( _nogoods );
+        }
     }
 
 
@@ -326,8 +884,8 @@ public class LogicEngine implements Runnable
 
             StringTokenizer tokenizer = new StringTokenizer( inClues[i] );
 
-            if (tokenizer.countTokens() != 3)   // must be a SOLVE, ANSWER, or error
-                break;                          // handle in generateSolution()
+            if (tokenizer.countTokens() != 3)   // SOLVE, ANSWER, DISTANCE, BETWEEN
+                continue;                       // or error, compiled later
 
             String a = tokenizer.nextToken();
             String relation = tokenizer.nextToken();
@@ -351,163 +909,49 @@ public class LogicEngine implements Runnable
     //----------------------------------------------------------------------
     void addVariableAndValue( String inVarName, String inValueName )
     {
-        Variable theVar = null;
+        Variable theVar = (Variable) _varTable.get( inVarName );
 
-        for (int i = 0; (i < _numVars) && (_varList[i] != null); i++ ) {
-            if (_varList[i].getName().equals( inVarName )) {
-                theVar = _varList[i];
-                break;
-            }
-        }
         if (theVar == null) {
             theVar = new Variable( inVarName );
+            theVar.setIndex( _varIndex );
             _varList[_varIndex++] = theVar;
+            _varTable.put( inVarName, theVar );
         }
-        theVar.addValueByName( inValueName );
+        Value value = theVar.addValueByName( inValueName );
+        if (!_valueTable.containsKey( inValueName ))
+            _valueTable.put( inValueName, value );
     }
 
     //----------------------------------------------------------------------
-    //  find all other relations in the clues
+    //  find all other relations in the clues.  Compile the clue and
+    //  apply it.
     //----------------------------------------------------------------------
     public void processRelation( String inClue )
         throws Exception
     {
-//      System.out.println( inClue );
-
-        StringTokenizer tokenizer = new StringTokenizer( inClue );
+        Constraint constraint = _compiler.compile( inClue, _currentClue );
 
-        String a = tokenizer.nextToken();
-
-        if (a.equals("SOLVE"))
-            parseWhatToSolveFor( tokenizer );
-
-        else if (a.equals("ANSWER"))
-            parseAnswerFormat( tokenizer );
-
-        else if (tokenizer.countTokens() != 2)  // should be 2 tokens left
-            throw new Exception("More than three strings in input string:" +
-                                    inClue );
-        else {      // a relation clue
-
-            String relation = tokenizer.nextToken();
-            String b = tokenizer.nextToken();
-
-            if (relation.equals("IS_LOCATED"))
-                makePositionRelation( a, b );
-
-            else if ((relation.equals("NEXT_TO")) ||
-                (relation.equals("IMMED_RIGHT_OF")) ||
-                (relation.equals("IMMED_LEFT_OF")))
-            {
-                if (_firstpass)     // save relative clues for later reapplication
-                    _relativeClues.addElement( inClue );
-
-                makeRelativePositionRelation( a, b, relation );
-
-            } else if (relation.equals("ISA")) {
-                // skip definitions, handled elsewhere
-
-            } else {        // found a user defined relation
-                handleUserRelation( a, b, relation );
-            }
-        }
-    }
-
-
-    //----------------------------------------------------------------------
-    //  handleRelation -- given a user-defined relation, if this is the first
-    //  mention of the relation then it is a definition, otherwise it is an
-    //  application of the relation.
-    //----------------------------------------------------------------------
-    void handleUserRelation(    String inValueA, String inValueB,
-                                String inRelation )
-        throws Exception
-    {
-        boolean relationExists = false;
-
-        // see if this relation is already defined
-        for (Enumeration e = _relationList.elements() ; e.hasMoreElements() ; ) {
-            String existingRelation = (String) e.nextElement();
-            if (existingRelation.equals( inRelation ))
-                relationExists = true;
-        }
-
-        if (relationExists) {
-            makeRelationBetweenValues( inValueA, inValueB );    // apply relation
-            // throws on error
-
-        } else {                                    // define relation
-            try {
-                getVariableByName( inValueA );      // verify a and b are
-                getVariableByName( inValueB );      // valid variables
-                _relationList.addElement( inRelation );
-            }
-            catch (Exception ex) {      // a or b are not valid variables
-                throw new Exception("ERROR: Relation '" + inRelation +
-                        "' not defined " + " before used.");
-            }
-        }
+        if (constraint != null)
+            applyConstraint( constraint );
     }
 
-    //----------------------------------------------------------------------
-    //  makeLocationRelation -- handle IS_LOCATED relation using the
-    //  position variable.
-    //  propagate all results throughout all relation matrices.
-    //
-    //  Exception thrown when the parser believe the input is in a bad format.
-    //----------------------------------------------------------------------
-    void makePositionRelation( String inValueNameA, String inWhere )
+    //  applyConstraint -- a compiled clue, part of the puzzle from now on
+    void applyConstraint( Constraint inConstraint )
         throws Exception
     {
-        int pos;
-
-        // set an absolute location
-        if (inWhere.equals("AT_LEFT"))
-            pos = 1;
-        else if (inWhere.equals("AT_RIGHT"))
-            pos = _numValues;
-        else if (inWhere.equals("IN_MIDDLE")) {
-            pos = (_numValues+1) / 2;
-            if ((_numValues % 2) == 0)
-                throw new Exception("Can't set value IN_MIDDLE when there are" +
-                    " an even number of values: " + inValueNameA + " IS_LOCATED " +
-                     inWhere);
-        } else
-            throw new Exception("ERROR: Bad value :" + inValueNameA +
-                        " IS_LOCATED " + inWhere);
-
-        makeRelationBetweenValues( inValueNameA, Integer.toString( pos ));
+        addConstraint( inConstraint );
+        _context.clearReason();
+        inConstraint.apply( this );
     }
 
-    //----------------------------------------------------------------------
-    //  makeRelativePositionRelation --
-    //  handle NEXT_TO, IMMED_RIGHT_OF, IMMED_LEFT_OF
-    //
-    //  Relative relations need to be reapplied after changes occur
-    //  to the matrices since new information could increase the usefulness
-    //  of these rules.
-    //----------------------------------------------------------------------
-    void makeRelativePositionRelation(  String inValueNameA,
-                                        String inValueNameB,
-                                        String inRelation )
-        throws Exception
+    //  addConstraint -- the same, without applying it yet
+    void addConstraint( Constraint inConstraint )
     {
-        if (inRelation.equals("NEXT_TO") ||
-            inRelation.equals("IMMED_RIGHT_OF") ||
-            inRelation.equals("IMMED_LEFT_OF")) {
-
-            Variable a = getVariableByValueName( inValueNameA );
-            Variable b = getVariableByValueName( inValueNameB );
-
-            Value valueA = a.getValueByName( inValueNameA );
-            Value valueB = b.getValueByName( inValueNameB );
-
-            calcRelativePosition( valueA, valueB, inRelation );
-
-        } else
-            throw new Exception("ERROR: Bad relative relation :" + inValueNameA + " " +
-                        inRelation + " " + inValueNameB);
+        _constraints.addElement( inConstraint );
+        _constraintChanges++;
 
+        if (inConstraint instanceof RelativePositionConstraint)
+            _queue.addClue( (RelativePositionConstraint) inConstraint );
     }
 
     //----------------------------------------------------------------------
@@ -521,14 +965,14 @@ public class LogicEngine implements Runnable
     //  Throws if lower level routines are hosed (e.g. no matrix for vars)
     //----------------------------------------------------------------------
     void calcRelativePosition(  Value inValueA, Value inValueB,
-                                String inRelation )
+                                int inRelation )
         throws Exception
     {
         Value relatedValue;
 
         // if one has a position then we know the position of the other
-        if (inRelation.equals("IMMED_RIGHT_OF") ||
-            inRelation.equals("IMMED_LEFT_OF")) {
+        if ((inRelation == RelativePositionConstraint.IMMED_RIGHT_OF) ||
+            (inRelation == RelativePositionConstraint.IMMED_LEFT_OF)) {
 
             // if one position is known then set the other's
             setPositionRelativeToFixedValue( inValueA, inValueB, inRelation );
@@ -549,7 +993,7 @@ public class LogicEngine implements Runnable
                 }
             }
 
-        } else if (inRelation.equals("NEXT_TO")) {
+        } else if (inRelation == RelativePositionConstraint.NEXT_TO) {
             handleNextTo( inValueA, inValueB );
 
         } else
@@ -598,7 +1042,7 @@ public class LogicEngine implements Runnable
         throws Exception
     {
         int pos;
-        Variable positionVar = getVariableByName("@position");
+        Variable positionVar = _positionVar;
 
         // we know these values cannot be related directly
         if (inValueA.getVariable() != inValueB.getVariable())
@@ -607,10 +1051,13 @@ public class LogicEngine implements Runnable
         Value positionValA = inValueA.getPositiveRelation( positionVar );
         Value positionValB = inValueB.getPositiveRelation( positionVar );
 
-        // both values have non-identical positions already, no need to check.
-        if ((positionValA != null) && (positionValB != null) &&
-            (positionValA.getIndex() != positionValB.getIndex()))
+        // both values have positions already, they had better be adjacent.
+        if ((positionValA != null) && (positionValB != null)) {
+            if (Math.abs( positionValA.getIndex() - positionValB.getIndex() ) != 1)
+                throw new LogicFailureException( inValueA + " is not NEXT_TO " + inValueB,
+                                                 _context.getReason() );
             return;
+        }
 
         //  eliminate all position relations except those immediately next door
         if (positionValA != null) {
@@ -638,7 +1085,7 @@ public class LogicEngine implements Runnable
     //
     //  Throws if lower level routines are hosed (e.g. no matrix for vars)
     //----------------------------------------------------------------------
-    void setPositionRelativeToFixedValue( Value inValueA, Value inValueB, String inRelation )
+    void setPositionRelativeToFixedValue( Value inValueA, Value inValueB, int inRelation )
         throws Exception
     {
         if (inValueA == inValueB)
@@ -648,16 +1095,18 @@ public class LogicEngine implements Runnable
         if (inValueA.getVariable() != inValueB.getVariable())
             inValueA.setNoRelation( inValueB );
 
-        Variable positionVar = getVariableByName("@position");
+        Variable positionVar = _positionVar;
         Value positionVal;
+        boolean right = (inRelation == RelativePositionConstraint.IMMED_RIGHT_OF);
+        boolean left = (inRelation == RelativePositionConstraint.IMMED_LEFT_OF);
 
         // cannot be at ends
-        if (inRelation.equals("IMMED_RIGHT_OF")) {
+        if (right) {
             inValueA.setNoRelation( positionVar.getValueByIndex( 0 ));
             inValueB.setNoRelation( positionVar.getValueByIndex( _numValues - 1 ));
         }
 
-        if (inRelation.equals("IMMED_LEFT_OF")) {
+        if (left) {
             inValueA.setNoRelation( positionVar.getValueByIndex( _numValues - 1));
             inValueB.setNoRelation( positionVar.getValueByIndex( 0 ));
         }
@@ -669,11 +1118,11 @@ public class LogicEngine implements Runnable
             int pos = positionVal.getIndex();
 
             // a is just right of b, set B
-            if (inRelation.equals("IMMED_RIGHT_OF") && (pos > 0))
+            if (right && (pos > 0))
                 inValueB.setRelation( positionVar.getValueByIndex( pos-1 ));
 
             // a is just left of b, set B
-            if (inRelation.equals("IMMED_LEFT_OF") && (pos < (_numValues-1)))
+            if (left && (pos < (_numValues-1)))
                 inValueB.setRelation( positionVar.getValueByIndex( pos+1 ));
         }
 
@@ -684,11 +1133,11 @@ public class LogicEngine implements Runnable
             int pos = positionVal.getIndex();
 
             // a is just right of b, set A
-            if (inRelation.equals("IMMED_RIGHT_OF") & (pos < (_numValues-1)))
+            if (right && (pos < (_numValues-1)))
                 inValueA.setRelation( positionVar.getValueByIndex( pos+1 ));
 
             // a is just left of b, set A
-            if (inRelation.equals("IMMED_LEFT_OF") && (pos > 0))
+            if (left && (pos > 0))
                 inValueA.setRelation( positionVar.getValueByIndex( pos-1 ));
         }
 
@@ -704,10 +1153,12 @@ public class LogicEngine implements Runnable
     //  Throws if can't find position variable
     //----------------------------------------------------------------------
     void propagateNegativePositions( Value inValueA, Value inValueB,
-                                     String inRelation )
+                                     int inRelation )
         throws Exception
     {
-        Variable positionVar = getVariableByName("@position");
+        Variable positionVar = _positionVar;
+        boolean right = (inRelation == RelativePositionConstraint.IMMED_RIGHT_OF);
+        boolean left = (inRelation == RelativePositionConstraint.IMMED_LEFT_OF);
 
         // iterate over all possible positions
         for (int i = 0; i < _numValues; i++) {
@@ -717,9 +1168,9 @@ public class LogicEngine implements Runnable
 
             if (relation == RelationMatrix.NO) {
                 // Set where A cannot be either
-                if (inRelation.equals("IMMED_RIGHT_OF") && (i < (_numValues-1)))
+                if (right && (i < (_numValues-1)))
                     inValueA.setNoRelation( positionVar.getValueByIndex( i+1 ));
-                if (inRelation.equals("IMMED_LEFT_OF") && (i > 0))
+                if (left && (i > 0))
                     inValueA.setNoRelation( positionVar.getValueByIndex( i-1 ));
             }
 
@@ -728,58 +1179,88 @@ public class LogicEngine implements Runnable
 
             if (relation == RelationMatrix.NO) {
                 // Set where B cannot be either
-                if (inRelation.equals("IMMED_RIGHT_OF") && (i > 0))
+                if (right && (i > 0))
                     inValueB.setNoRelation( positionVar.getValueByIndex( i-1 ));
-                if (inRelation.equals("IMMED_LEFT_OF") && (i < (_numValues-1)))
+                if (left && (i < (_numValues-1)))
                     inValueB.setNoRelation( positionVar.getValueByIndex( i+1 ));
             }
         }
     }
 
     //----------------------------------------------------------------------
-    //  makeRelationBetweenValues -- handle an absolute relation,
-    //  propagate all results throughout all relation matrices.
+    //  calcPositionBounds -- handle LEFT_OF, RIGHT_OF, DISTANCE and BETWEEN.
+    //  The values are different entities, and each keeps only the positions
+    //  the others' leave room for, see RelativePositionConstraint's
+    //  findSupport().  Whatever a value is known to be shares its
+    //  position, so loses the same ones.
     //
-    //  Throws when relation is declared without two valid variables.
+    //  Throws LogicFailureException if a value has no position left.
     //----------------------------------------------------------------------
-    void makeRelationBetweenValues( String inValueNameA, String inValueNameB )
+    void calcPositionBounds( RelativePositionConstraint inClue )
         throws Exception
     {
-        try {   // look up objects in our tables
-            Variable a = getVariableByValueName( inValueNameA );
-            Variable b = getVariableByValueName( inValueNameB );
-
-            Value valueA = a.getValueByName( inValueNameA );
-            Value valueB = b.getValueByName( inValueNameB );
+        Value values[] = inClue.getValues();
+        long domain[] = inClue._domain;
+        long support[] = inClue._support;
+        long all = (_numValues == 64) ? -1L : (1L << _numValues) - 1;
 
-            valueA.setRelation( valueB );
+        // we know these values cannot be related directly
+        for (int i = 0; i < values.length; i++)
+            for (int j = i + 1; j < values.length; j++)
+                if (values[i].getVariable() != values[j].getVariable())
+                    values[i].setNoRelation( values[j] );
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].getVariable() == _positionVar)
+                domain[i] = 1L << values[i].getIndex();
+            else
+                domain[i] = values[i].getVariable().getMatrixForVariable( _positionVar )
+                                                   .getPossible( values[i] );
         }
-        catch (Exception ex) {
-    //      System.err.println( ex );
-            throw ex;
+
+        inClue.findSupport( domain, support, all );
+
+        Value related;
+        long lost;
+        int pos;
+
+        for (int i = 0; i < values.length; i++) {
+            if ((domain[i] & support[i]) == 0)
+                throw new LogicFailureException("No position left for " + values[i],
+                                                _context.getReason() );
+            if (values[i].getVariable() == _positionVar)
+                continue;
+
+            for (lost = domain[i] & ~support[i]; lost != 0; lost &= lost - 1) {
+                pos = Long.numberOfTrailingZeros( lost );
+                values[i].setNoRelation( _positionVar.getValueByIndex( pos ));
+
+                for (int v = 0; v < _varList.length; v++) {
+                    if ((_varList[v] == _positionVar) || (_varList[v] == values[i].getVariable()))
+                        continue;
+                    related = values[i].getPositiveRelation( _varList[v] );
+                    if (related != null)
+                        related.setNoRelation( _positionVar.getValueByIndex( pos ));
+                }
+            }
         }
     }
 
     //----------------------------------------------------------------------
-    //  parseWhatToSolveFor -- Look for "SOLVE variable relation value"
-    //  e.g. "person owns zebra"
+    //  setSolveFor -- "SOLVE variable relation value", e.g. "person owns zebra"
     //----------------------------------------------------------------------
-    public void parseWhatToSolveFor( StringTokenizer inTokenizer )
-        throws Exception
+    void setSolveFor( Variable inVar, String inValueName )
     {
-        _solutionVar = getVariableByName( inTokenizer.nextToken() );
-        String relation = inTokenizer.nextToken();
-        _solutionValue = inTokenizer.nextToken();
+        _solutionVar = inVar;
+        _solutionValue = inValueName;
     }
 
     //----------------------------------------------------------------------
-    //  parseAnswerFormat -- what order of variables to print solution values.
+    //  addAnswerVariable -- next in order of variables to print solution values.
     //----------------------------------------------------------------------
-    public void parseAnswerFormat( StringTokenizer inTokenizer )
-        throws Exception
+    void addAnswerVariable( Variable inVar )
     {
-        while (inTokenizer.hasMoreTokens())
-            _answerVariableOrder.addElement( getVariableByName( inTokenizer.nextToken() ));
+        _answerVariableOrder.addElement( inVar );
     }
 
 
@@ -790,9 +1271,9 @@ public class LogicEngine implements Runnable
     public Variable getVariableByName( String inVarName )
         throws Exception
     {
-        for (int i = 0; i < _numVars; i++)
-            if (_varList[i].getName().equals( inVarName ))
-                return _varList[i];
+        Variable var = (Variable) _varTable.get( inVarName );
+        if (var != null)
+            return var;
 
         throw new Exception("ERROR: Cannot find variable with the name: " +
                             inVarName);
@@ -806,14 +1287,33 @@ public class LogicEngine implements Runnable
     public Variable getVariableByValueName( String inValueName )
         throws Exception
     {
-        for (int i = 0; i < _numVars; i++)
-            if (_varList[i].hasValueName( inValueName ))
-                return _varList[i];
+        return getValueByName( inValueName ).getVariable();
+    }
+
+    //----------------------------------------------------------------------
+    //  getValueByName -- find a value by name, whichever variable it's of.
+    //  If two variables have a value by that name, the first one's.
+    //----------------------------------------------------------------------
+    public Value getValueByName( String inValueName )
+        throws Exception
+    {
+        Value value = (Value) _valueTable.get( inValueName );
+        if (value != null)
+            return value;
 
         throw new Exception("ERROR: Cannot find variable with the value " +
                             inValueName);
     }
 
+    //----------------------------------------------------------------------
+    //  getMatrix -- the matrix relating two variables, by their indices.
+    //  null if they're the same variable.
+    //----------------------------------------------------------------------
+    public RelationMatrix getMatrix( int inVarA, int inVarB )
+    {
+        return _matrixTable[inVarA][inVarB];
+    }
+
     //----------------------------------------------------------------------
     //  toString -- print
     //----------------------------------------------------------------------
@@ -827,7 +1327,7 @@ public class LogicEngine implements Runnable
                 s.append( _varList[i].getName() + "\n" );
 
             s.append("\nRelations: ");
-            for (Enumeration e = _relationList.elements() ; e.hasMoreElements() ; )
+            for (Enumeration e = _compiler.getRelationList().elements() ; e.hasMoreElements() ; )
                 s.append( (String) e.nextElement() + " ");
 
             s.append("\n\n");
@@ -855,4 +1355,25 @@ public class LogicEngine implements Runnable
 }
 
 
+//----------------------------------------------------------------------
+//  Decision
+//
+//  A guess the engine made: the cell guessed YES, its level (1 for the
+//  first guess) and the trail mark before it, to undo back to.
+//----------------------------------------------------------------------
 
+class Decision
+{
+    int             mark;
+    RelationMatrix  matrix;
+    int             x, y, level;
+
+    public Decision( int inMark, SetCommand inGuess, int inLevel )
+    {
+        mark = inMark;
+        matrix = inGuess.matrix;
+        x = inGuess.x;
+        y = inGuess.y;
+        level = inLevel;
+    }
+}
@@ -14,6 +14,7 @@ public class LogicMatrixPanel extends Panel
 {
     Point       _gridSize;
     LogicEngine _engine;
+    SolverViewAdapter   _view;      // if set, show what it has replayed so far
     int         _space;
     boolean     _partialUpdate;
 
@@ -29,6 +30,7 @@ public class LogicMatrixPanel extends Panel
     }
 
     public void setPartialUpdate( boolean inFlag )  { _partialUpdate = inFlag; }
+    public void setViewAdapter( SolverViewAdapter inView )  { _view = inView; }
 
     //----------------------------------------------------------------------
     //  getPreferredSize -- 10 spaces for text and values^2 boxes
@@ -100,6 +102,8 @@ public class LogicMatrixPanel extends Panel
         int yOffset = _gridSize.y * 10;
 
         Variable    varList[] = _engine.getVarList();
+        Value recentA = (_view != null) ? _view.getMostRecentValueA() : null;
+        Value recentB = (_view != null) ? _view.getMostRecentValueB() : null;
         StringBuffer relationString = new StringBuffer("E");    // X, O, Error, ' '
 
         FontMetrics fm = inGfx.getFontMetrics();
@@ -131,7 +135,9 @@ public class LogicMatrixPanel extends Panel
                     _gridSize.x, _gridSize.y );
 
                 try {
-                    int relation = varA.getValueByIndex( ly ).getRelation( varB.getValueByIndex( lx ));
+                    int relation = (_view != null) ?
+                        _view.getRelation( varA.getValueByIndex( ly ), varB.getValueByIndex( lx )) :
+                        varA.getValueByIndex( ly ).getRelation( varB.getValueByIndex( lx ));
 
                     if (relation == RelationMatrix.YES)
                         relationString.setCharAt(0, 'O');
@@ -144,10 +150,10 @@ public class LogicMatrixPanel extends Panel
                     relationString.setCharAt(0, 'E');
                 }
 
-                if (((varA.getValueByIndex( ly ) == RelationMatrix.getMostRecentValueA()) ||
-                     (varA.getValueByIndex( ly ) == RelationMatrix.getMostRecentValueB())) &&
-                    ((varB.getValueByIndex( lx ) == RelationMatrix.getMostRecentValueA()) ||
-                     (varB.getValueByIndex( lx ) == RelationMatrix.getMostRecentValueB()))) {
+                if (((varA.getValueByIndex( ly ) == recentA) ||
+                     (varA.getValueByIndex( ly ) == recentB)) &&
+                    ((varB.getValueByIndex( lx ) == recentA) ||
+                     (varB.getValueByIndex( lx ) == recentB))) {
 
                     inGfx.setColor( Color.red );
                     newGuy = true;      // new X/O to draw
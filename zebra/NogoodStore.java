@@ -0,0 +1,240 @@
+//----------------------------------------------------------------------
+//  NogoodStore
+//
+//  Nogoods learned from the engine's failures, for clause learning.
+//  A failure's conflict says which guesses it depends on, and those
+//  guesses together are a nogood: cells that can't all be YES at once,
+//  whatever else is guessed.  Backtracking forgets that as soon as it
+//  backs up past them, and may run into the same failure again down
+//  another branch.  The store remembers, and once every cell of a
+//  nogood but one is YES it sets that one NO, before the engine has to
+//  guess again.
+//
+//  Each nogood watches two of its cells that aren't YES, the way a SAT
+//  solver watches literals, and is only looked at when one of those
+//  turns YES: then it watches another cell if it can, else the other
+//  watched cell has to be NO.  Undo needs nothing, the watches stay
+//  good.  Cells turned YES are read off the context's trail, from
+//  where the store had got to.
+//
+//  A nogood holds for as long as the clues and the solutions already
+//  found do, so the engine clears the store whenever it starts over.
+//----------------------------------------------------------------------
+
+class NogoodStore
+{
+    SolverContext   _context;
+    SolverStatistics    _stats;
+    int         _numValues;
+    Nogood      _watches[];     // [cell key], first nogood watching the cell
+    int         _checked = 0;   // trail entries already looked at
+
+    //----------------------------------------------------------------------
+    //  Constructor -- the matrices must already be built.
+    //----------------------------------------------------------------------
+    public NogoodStore( SolverContext inContext, int inNumValues, SolverStatistics inStats )
+    {
+        _context = inContext;
+        _numValues = inNumValues;
+        _stats = inStats;
+        _watches = new Nogood[inContext.getMatrixCount() * inNumValues * inNumValues];
+    }
+
+    //  forget every nogood
+    void clear()
+    {
+        for (int i = 0; i < _watches.length; i++)
+            _watches[i] = null;
+    }
+
+    //  the trail was rewound to this mark
+    void rewind( int inMark )
+    {
+        _checked = Math.min( _checked, inMark );
+    }
+
+    //----------------------------------------------------------------------
+    //  learn -- these cells, packed trail entries, can't all be YES.  They
+    //  all are now, and the first is about to be undone: it and the
+    //  second, the next to be undone, are the ones watched.
+    //----------------------------------------------------------------------
+    void learn( int inCells[] )
+    {
+        Nogood nogood = new Nogood( inCells );
+
+        nogood.watch[1] = Math.min( 1, inCells.length - 1 );
+        watch( nogood, 0 );
+        if (inCells.length > 1)
+            watch( nogood, 1 );
+        _stats._learned++;
+    }
+
+    //  put the nogood on the watch list of its cell watched in inSlot
+    void watch( Nogood inNogood, int inSlot )
+    {
+        int key = getKey( inNogood.cells[inNogood.watch[inSlot]] );
+
+        inNogood.next[inSlot] = _watches[key];
+        _watches[key] = inNogood;
+    }
+
+    //----------------------------------------------------------------------
+    //  propagate -- look at the cells set since last time.  Returns true
+    //  if that set any more.  Throws LogicFailureException if a nogood
+    //  has every cell YES.
+    //----------------------------------------------------------------------
+    boolean propagate()
+        throws Exception
+    {
+        boolean changed = false;
+        int entry;
+
+        while (_checked < _context._trailSize) {
+            entry = _context._trail[_checked++];
+            if ((entry & 0x3) == RelationMatrix.YES)
+                changed |= cellSetYes( getKey( entry ));
+        }
+        return changed;
+    }
+
+    //----------------------------------------------------------------------
+    //  cellSetYes -- go through the nogoods watching this cell.  Each one
+    //  moves to another cell's list or stays on this one.
+    //----------------------------------------------------------------------
+    boolean cellSetYes( int inKey )
+        throws Exception
+    {
+        Nogood nogood, rest = _watches[inKey];
+        boolean changed = false;
+        int slot;
+
+        _watches[inKey] = null;
+        try {
+            while (rest != null) {
+                nogood = rest;
+                slot = getSlot( nogood, inKey );
+                rest = nogood.next[slot];
+
+                if (findWatch( nogood, slot ))
+                    watch( nogood, slot );
+                else {
+                    nogood.next[slot] = _watches[inKey];
+                    _watches[inKey] = nogood;
+                    changed |= fire( nogood, slot );
+                }
+            }
+        }
+        finally {
+            // if a nogood failed, the ones not looked at still watch this cell
+            while (rest != null) {
+                nogood = rest;
+                slot = getSlot( nogood, inKey );
+                rest = nogood.next[slot];
+                nogood.next[slot] = _watches[inKey];
+                _watches[inKey] = nogood;
+            }
+        }
+        return changed;
+    }
+
+    //  which of the nogood's watches is on this cell
+    int getSlot( Nogood inNogood, int inKey )
+    {
+        return (getKey( inNogood.cells[inNogood.watch[0]] ) == inKey) ? 0 : 1;
+    }
+
+    //----------------------------------------------------------------------
+    //  findWatch -- move this watch to a cell of the nogood that isn't YES
+    //  and isn't watched already.  False if there isn't one.
+    //----------------------------------------------------------------------
+    boolean findWatch( Nogood inNogood, int inSlot )
+    {
+        int other = inNogood.watch[1 - inSlot];
+
+        if (getCell( inNogood.cells[other] ) == RelationMatrix.NO)
+            return false;       // can't all be YES anyway
+
+        for (int i = 0; i < inNogood.cells.length; i++) {
+            if ((i != other) && (i != inNogood.watch[inSlot]) &&
+                (getCell( inNogood.cells[i] ) != RelationMatrix.YES)) {
+                inNogood.watch[inSlot] = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //----------------------------------------------------------------------
+    //  fire -- every cell of the nogood but maybe the other watched one is
+    //  YES.  That one has to be NO, because of what the rest depend on.
+    //  Returns true if it was set.
+    //----------------------------------------------------------------------
+    boolean fire( Nogood inNogood, int inSlot )
+        throws Exception
+    {
+        int other = inNogood.watch[1 - inSlot];
+        int cell = getCell( inNogood.cells[other] );
+        long reason = 0;
+
+        if (cell == RelationMatrix.NO)
+            return false;
+
+        for (int i = 0; i < inNogood.cells.length; i++)
+            if (i != other)
+                reason |= getReason( inNogood.cells[i] );
+
+        if (cell == RelationMatrix.YES)
+            throw new LogicFailureException("Learned nogood violated",
+                                            reason | getReason( inNogood.cells[other] ));
+
+        int entry = inNogood.cells[other];
+        _stats._nogoodsFired++;
+        _context.getMatrix( entry >>> 14 ).set( (entry >>> 8) & 0x3F, (entry >>> 2) & 0x3F,
+                                                RelationMatrix.NO, reason );
+        return true;
+    }
+
+    //----------------------------------------------------------------------
+    //  cells by packed trail entry
+    //----------------------------------------------------------------------
+    int getKey( int inEntry )
+    {
+        return ((inEntry >>> 14) * _numValues + ((inEntry >>> 8) & 0x3F)) * _numValues +
+               ((inEntry >>> 2) & 0x3F);
+    }
+
+    int getCell( int inEntry )
+    {
+        return _context.getMatrix( inEntry >>> 14 ).getCell( (inEntry >>> 8) & 0x3F,
+                                                             (inEntry >>> 2) & 0x3F );
+    }
+
+    long getReason( int inEntry )
+    {
+        return _context.getMatrix( inEntry >>> 14 ).getReason( (inEntry >>> 8) & 0x3F,
+                                                               (inEntry >>> 2) & 0x3F );
+    }
+
+}   // end of class definition
+
+
+
+
+//----------------------------------------------------------------------
+//  Nogood
+//
+//  Cells that can't all be YES, and the two of them being watched.
+//  A nogood of one cell watches it twice over, in slot 0 only.
+//----------------------------------------------------------------------
+
+class Nogood
+{
+    int     cells[];                    // packed trail entries
+    int     watch[] = { 0, 0 };         // indices into cells
+    Nogood  next[] = new Nogood[2];     // next on each watched cell's list
+
+    public Nogood( int inCells[] )
+    {
+        cells = inCells;
+    }
+}
@@ -0,0 +1,235 @@
+//----------------------------------------------------------------------
+//  ParallelSolver
+//
+//  Solves one puzzle on several threads.  The search tree is split at
+//  its first few guesses: every guess has a YES branch and a NO branch,
+//  so splitting at depth d gives up to 2^d subtrees, each kept as a
+//  snapshot of the cells at its root, once the guesses on the way down
+//  have been propagated.  Worker threads take subtrees in order and
+//  solve each with the snapshot restored into a LogicEngine of the
+//  worker's own.  A worker's engine compiles the clues once, without
+//  applying them, and is reused from one subtree to the next, so no
+//  relation state is shared and nothing is propagated twice.
+//
+//  The sequential engine searches YES before NO, i.e. the subtrees from
+//  left to right, and answers with the first solution it finds.  So the
+//  answer here is the solution of the leftmost subtree that has one.
+//  When a subtree is solved, the subtrees to its right are cancelled;
+//  the ones to its left keep going, since any of them could still win.
+//----------------------------------------------------------------------
+
+import java.util.*;
+
+public class ParallelSolver
+{
+    int         _numValues;
+    String      _clues[];
+    int         _numThreads;
+    int         _splitDepth = 4;
+
+    Vector      _tasks;             // long[] snapshots, leftmost first
+    LogicEngine _engines[];         // engine working on each task, or null
+    int         _nextTask;
+    int         _best;              // leftmost solved task so far
+    LogicEngine _winner;
+    Exception   _error;             // first thing a worker threw, see taskFailed()
+
+    //----------------------------------------------------------------------
+    //  Constructor -- same arguments as LogicEngine's.
+    //----------------------------------------------------------------------
+    public ParallelSolver( int inNumValues, String inClues[] )
+    {
+        _numValues = inNumValues;
+        _clues = inClues;
+        _numThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    //  Set before solving.  One thread per processor and a split depth of
+    //  4 by default.
+    public void setThreadCount( int inCount )   { _numThreads = Math.max( inCount, 1 ); }
+    public void setSplitDepth( int inDepth )    { _splitDepth = Math.max( inDepth, 0 ); }
+
+    //----------------------------------------------------------------------
+    //  solve -- return the engine that found the answer, to read the
+    //  solution from.  Throws, like LogicEngine.solve(), if the clues are
+    //  bad or there's no solution, and rethrows anything else a worker
+    //  ran into.
+    //----------------------------------------------------------------------
+    public LogicEngine solve()
+        throws Exception
+    {
+        LogicEngine engine = new LogicEngine( _numValues, _clues );
+
+        engine.start();
+
+        _tasks = new Vector();
+        engine.propagate();
+        split( engine, 0 );
+
+        if (_tasks.size() == 0)
+            throw new Exception("Could not make any logically consistent guesses");
+
+        _engines = new LogicEngine[_tasks.size()];
+        _nextTask = 0;
+        _best = _tasks.size();
+        _winner = null;
+        _error = null;
+
+        Thread workers[] = new Thread[Math.min( _numThreads, _tasks.size() )];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread( new ParallelWorker( this ), "ParallelSolver-" + i );
+            workers[i].start();
+        }
+        for (int i = 0; i < workers.length; i++)
+            workers[i].join();
+
+        if (_error != null)
+            throw _error;
+        if (_winner == null)
+            throw new Exception("Could not make any logically consistent guesses");
+        return _winner;
+    }
+
+    //----------------------------------------------------------------------
+    //  split -- guess as the engine would, YES branch first, down to the
+    //  split depth, and add each subtree that doesn't fail straight away
+    //  as a task.  The engine has propagated as far as it can, inDepth
+    //  guesses down.  Returns true once a task is already solved, which
+    //  leaves nothing to the right worth adding.
+    //----------------------------------------------------------------------
+    boolean split( LogicEngine inEngine, int inDepth )
+        throws Exception
+    {
+        if ((inDepth == _splitDepth) || inEngine.isSolved()) {
+            _tasks.addElement( inEngine.snapshot() );
+            return inEngine.isSolved();
+        }
+
+        SolverContext context = inEngine.getContext();
+        SetCommand guess = inEngine.getBranchingStrategy().chooseGuess( inEngine );
+        int mark = context.mark();
+        int what;
+
+        for (int branch = 0; branch < 2; branch++) {
+            what = (branch == 0) ? RelationMatrix.YES : RelationMatrix.NO;
+            boolean done = false;
+            try {
+                context.clearReason();
+                guess.matrix.set( guess.x, guess.y, what, 0 );
+                inEngine.propagate();
+                done = split( inEngine, inDepth + 1 );
+            }
+            catch (LogicFailureException ex) { }    // nothing down this branch
+            context.rewind( mark );
+            if (done)
+                return true;
+        }
+        return false;
+    }
+
+    //----------------------------------------------------------------------
+    //  nextTask -- the next task for a worker, with its engine, or -1 if
+    //  there's nothing left worth doing.
+    //----------------------------------------------------------------------
+    synchronized int nextTask( LogicEngine inEngine )
+    {
+        if (_nextTask >= _best)
+            return -1;
+        _engines[_nextTask] = inEngine;
+        return _nextTask++;
+    }
+
+    long[] getTask( int inTask )    { return (long[]) _tasks.elementAt( inTask ); }
+
+    //----------------------------------------------------------------------
+    //  taskSolved -- a worker found a solution.  Keep it if it's the
+    //  leftmost so far and cancel everything to the right of it.
+    //----------------------------------------------------------------------
+    synchronized void taskSolved( int inTask, LogicEngine inEngine )
+    {
+        if (inTask >= _best)
+            return;
+
+        _best = inTask;
+        _winner = inEngine;
+        for (int i = inTask + 1; i < _engines.length; i++)
+            if (_engines[i] != null)
+                _engines[i].cancel();
+    }
+
+    //----------------------------------------------------------------------
+    //  taskFailed -- a worker threw something other than a failure to
+    //  find a solution.  Keep the first, for solve() to throw, and stop
+    //  everything, since the answer can't be trusted now.
+    //----------------------------------------------------------------------
+    synchronized void taskFailed( int inTask, Exception inError )
+    {
+        if (_error == null)
+            _error = inError;
+
+        _best = -1;
+        for (int i = 0; i < _engines.length; i++)
+            if (_engines[i] != null)
+                _engines[i].cancel();
+    }
+
+    synchronized void taskDone( int inTask )
+    {
+        _engines[inTask] = null;
+    }
+
+    public String toString()
+    {
+        return "ParallelSolver: " + _numThreads + " threads, split depth " + _splitDepth;
+    }
+
+}   // end of class definition
+
+
+
+
+//----------------------------------------------------------------------
+//  ParallelWorker
+//
+//  Solves tasks for a ParallelSolver until there are none left, on one
+//  engine restored from each task's snapshot in turn.  An engine that
+//  won or was cancelled is left alone and a new one built.
+//----------------------------------------------------------------------
+
+class ParallelWorker implements Runnable
+{
+    ParallelSolver  _solver;
+
+    public ParallelWorker( ParallelSolver inSolver )
+    {
+        _solver = inSolver;
+    }
+
+    public void run()
+    {
+        LogicEngine engine = null;
+        int task;
+
+        while (true) {
+            if (engine == null)
+                engine = new LogicEngine( _solver._numValues, _solver._clues );
+            task = _solver.nextTask( engine );
+            if (task < 0)
+                return;
+
+            try {
+                engine.solveFrom( _solver.getTask( task ));
+                _solver.taskSolved( task, engine );
+                engine = null;                      // the answer's in it
+            }
+            catch (LogicFailureException ex) { }    // no solution there
+            catch (Exception ex) {
+                if (!engine.isCancelled())
+                    _solver.taskFailed( task, ex );
+            }
+            _solver.taskDone( task );
+            if ((engine != null) && engine.isCancelled())
+                engine = null;
+        }
+    }
+}
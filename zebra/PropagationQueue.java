@@ -0,0 +1,195 @@
+//----------------------------------------------------------------------
+//  PropagationQueue
+//
+//  Relative clues (NEXT_TO, IMMED_RIGHT_OF, LEFT_OF, BETWEEN ...) need
+//  to be reapplied when the relations they read change.  Each clue
+//  watches its values, two or three.  When a matrix cell changes, the clues watching
+//  either value of the cell are queued to run again.  A clue also reads
+//  the positions of values related to its own, so a change to a value's
+//  position queues the clues watching anything related to that value.
+//  With arc consistency on a clue reads the positions of everything its
+//  values could still be related to, so with setWatchPossible() those
+//  are watched too.
+//
+//  Each clue is queued at most once at a time.
+//----------------------------------------------------------------------
+
+import java.util.*;
+
+class PropagationQueue
+{
+    Vector      _watchers[];    // RelativePositionConstraints by value id, or null
+    Vector      _clues;         // every clue, in clue order
+    RelativePositionConstraint  _queue[];   // circular queue of clues to run
+    int         _head, _count;
+    int         _numValues;
+    Variable    _positionVar;
+    boolean     _watchPossible = false; // watch possible relations, not just YES
+
+    //----------------------------------------------------------------------
+    //  Constructor -- value ids run from 0 to numVars * numValues.
+    //----------------------------------------------------------------------
+    public PropagationQueue( int inNumVars, int inNumValues )
+    {
+        _numValues = inNumValues;
+        _watchers = new Vector[inNumVars * inNumValues];
+        _clues = new Vector();
+        _queue = new RelativePositionConstraint[8];
+    }
+
+    public void setPositionVariable( Variable inVar )   { _positionVar = inVar; }
+    public void setWatchPossible( boolean inFlag )      { _watchPossible = inFlag; }
+    public boolean isEmpty()                            { return _count == 0; }
+
+    int getValueID( Value inValue )
+    {
+        return inValue.getVariable().getIndex() * _numValues + inValue.getIndex();
+    }
+
+    //----------------------------------------------------------------------
+    //  addClue -- start watching a clue's values
+    //----------------------------------------------------------------------
+    public void addClue( RelativePositionConstraint inClue )
+    {
+        _clues.addElement( inClue );
+        if (_clues.size() > _queue.length)
+            growQueue();
+
+        Value values[] = inClue.getValues();
+        for (int i = 0; i < values.length; i++)
+            watch( values[i], inClue );
+    }
+
+    //----------------------------------------------------------------------
+    //  removeLastClue -- stop watching the clue added last
+    //----------------------------------------------------------------------
+    public void removeLastClue()
+    {
+        RelativePositionConstraint clue = (RelativePositionConstraint) _clues.lastElement();
+        Value values[] = clue.getValues();
+
+        _clues.removeElementAt( _clues.size() - 1 );
+        for (int i = 0; i < values.length; i++)
+            _watchers[getValueID( values[i] )].removeElement( clue );
+        clear();
+    }
+
+    void watch( Value inValue, RelativePositionConstraint inClue )
+    {
+        int id = getValueID( inValue );
+        if (_watchers[id] == null)
+            _watchers[id] = new Vector( 2 );
+        _watchers[id].addElement( inClue );
+    }
+
+    void growQueue()
+    {
+        RelativePositionConstraint queue[] = new RelativePositionConstraint[_queue.length * 2];
+        for (int i = 0; i < _count; i++)
+            queue[i] = _queue[(_head + i) % _queue.length];
+        _queue = queue;
+        _head = 0;
+    }
+
+    //----------------------------------------------------------------------
+    //  enqueue, enqueueAll, next -- first in first out, no duplicates
+    //----------------------------------------------------------------------
+    void enqueue( RelativePositionConstraint inClue )
+    {
+        if (!inClue._queued) {
+            inClue._queued = true;
+            _queue[(_head + _count++) % _queue.length] = inClue;
+        }
+    }
+
+    public void enqueueAll()
+    {
+        for (Enumeration e = _clues.elements() ; e.hasMoreElements() ; )
+            enqueue( (RelativePositionConstraint) e.nextElement() );
+    }
+
+    //  Returns null when there's nothing left to run.
+    public RelativePositionConstraint next()
+    {
+        if (_count == 0)
+            return null;
+
+        RelativePositionConstraint clue = _queue[_head];
+        _queue[_head] = null;
+        _head = (_head + 1) % _queue.length;
+        _count--;
+        clue._queued = false;
+        return clue;
+    }
+
+    //----------------------------------------------------------------------
+    //  clear -- forget anything queued, e.g. after undoing back to a state
+    //  where all clues had been run.
+    //----------------------------------------------------------------------
+    public void clear()
+    {
+        RelativePositionConstraint clue;
+        while ((clue = next()) != null)
+            ;
+    }
+
+    //----------------------------------------------------------------------
+    //  cellChanged -- a cell of this matrix was set.  Queue the clues that
+    //  read it.
+    //----------------------------------------------------------------------
+    void cellChanged( RelationMatrix inMatrix, int x, int y )
+    {
+        if (_clues.size() == 0)
+            return;
+
+        Value valueA = inMatrix.getVariableA().getValueByIndex( x );
+        Value valueB = inMatrix.getVariableB().getValueByIndex( y );
+
+        enqueueWatchers( valueA );
+        enqueueWatchers( valueB );
+
+        // clues read the positions of values related to theirs too
+        if (valueA.getVariable() == _positionVar)
+            enqueueRelatedWatchers( valueB );
+        else if (valueB.getVariable() == _positionVar)
+            enqueueRelatedWatchers( valueA );
+    }
+
+    void enqueueWatchers( Value inValue )
+    {
+        Vector watchers = _watchers[getValueID( inValue )];
+        if (watchers != null)
+            for (int i = 0; i < watchers.size(); i++)
+                enqueue( (RelativePositionConstraint) watchers.elementAt( i ));
+    }
+
+    void enqueueRelatedWatchers( Value inValue )
+    {
+        Vector matrices = inValue.getVariable().getMatrixVector();
+
+        try {
+            for (int i = 0; i < matrices.size(); i++) {
+                RelationMatrix mat = (RelationMatrix) matrices.elementAt( i );
+                if (mat.relates( _positionVar ))
+                    continue;
+
+                if (_watchPossible) {
+                    Variable other = mat.getOtherVariable( inValue.getVariable() );
+                    for (long possible = mat.findPossible( inValue ); possible != 0;
+                         possible &= possible - 1)
+                        enqueueWatchers( other.getValueByIndex(
+                                            Long.numberOfTrailingZeros( possible )));
+                } else {
+                    Value related = mat.findPositiveRelation( inValue );
+                    if (related != null)
+                        enqueueWatchers( related );
+                }
+            }
+        }
+        catch (Exception ex) {      // can't happen, inValue is in each matrix
+            enqueueAll();
+        }
+    }
+
+}   // end of class definition
+
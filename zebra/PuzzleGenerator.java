@@ -0,0 +1,348 @@
+//----------------------------------------------------------------------
+//  PuzzleGenerator
+//
+//  Makes up puzzles with one answer, for load and soak testing.  A
+//  random solution is chosen for inSize variables of inSize values
+//  each, then random clues that are true of it are added until the
+//  engine finds that solution is the only one.  Then each clue in turn
+//  is dropped if the answer stays unique without it, so no clue left
+//  is redundant.  Uniqueness is counted with ExactCoverSolver, which
+//  is quicker at it than the engine's own search.  A count that takes
+//  too long is given up on, and the clue kept, so a big puzzle may be
+//  left with a clue or two it could do without, but never ambiguous.
+//
+//  How hard a puzzle is is how many guesses the engine needs to solve
+//  it.  With a target range set, puzzles are made until one lands in
+//  it, or the closest of so many tries is kept.  Everything comes from
+//  the one seed, so the same seed gives the same puzzles.
+//
+//  Variables are kind0, kind1, ... with values A0, A1, ..., B0, ...,
+//  related to kind0 by with1, with2, ... as in ZebraBenchmark.
+//
+//      PuzzleGenerator [flags] size
+//          -seed n                 default 1
+//          -count n                puzzles to make, default 1
+//          -guesses min max        target difficulty
+//          -tries n                puzzles to try for each, default 20
+//          -dir directory          write gen<size>_<seed>_<i>.txt files
+//                                  there instead of to standard output,
+//                                  where they're separated by "---"
+//----------------------------------------------------------------------
+
+import java.io.*;
+import java.util.*;
+
+class PuzzleGenerator
+{
+    int         _size;
+    Random      _random;
+    int         _minGuesses = 0;
+    int         _maxGuesses = Integer.MAX_VALUE;
+    int         _maxTries = 20;
+    long        _nodeLimit = 200000;    // per uniqueness count
+    int         _guesses = 0;       // guesses the last puzzle needed
+
+    int         _position[][];      // [variable][value], the solution
+    int         _place[][];         // [variable][position]
+    Vector      _definitions;       // ISA and relation definitions
+    Vector      _goals;             // SOLVE and ANSWER
+
+    //----------------------------------------------------------------------
+    //  main
+    //----------------------------------------------------------------------
+    public static void main( String args[] )
+    {
+        long seed = 1;
+        int count = 1, size = 0;
+        int minGuesses = 0, maxGuesses = Integer.MAX_VALUE, tries = 20;
+        String dir = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-seed") && (i + 1 < args.length))
+                    seed = Long.parseLong( args[++i] );
+                else if (args[i].equals("-count") && (i + 1 < args.length))
+                    count = Integer.parseInt( args[++i] );
+                else if (args[i].equals("-guesses") && (i + 2 < args.length)) {
+                    minGuesses = Integer.parseInt( args[++i] );
+                    maxGuesses = Integer.parseInt( args[++i] );
+                } else if (args[i].equals("-tries") && (i + 1 < args.length))
+                    tries = Integer.parseInt( args[++i] );
+                else if (args[i].equals("-dir") && (i + 1 < args.length))
+                    dir = args[++i];
+                else
+                    size = Integer.parseInt( args[i] );
+            }
+        }
+        catch (NumberFormatException ex) {
+            size = 0;
+        }
+        if ((size < 2) || (size > 26)) {       // one letter per variable
+            System.err.println("Usage: PuzzleGenerator [-seed n] [-count n] " +
+                               "[-guesses min max] [-tries n] [-dir directory] size");
+            System.exit( 2 );
+        }
+
+        PuzzleGenerator generator = new PuzzleGenerator( size, seed );
+        generator.setTargetGuesses( minGuesses, maxGuesses );
+        generator.setMaxTries( tries );
+
+        try {
+            for (int i = 0; i < count; i++) {
+                String name = "gen" + size + "_" + seed + "_" + i + ".txt";
+                ClueFile puzzle = generator.generate( name );
+
+                if (dir != null)
+                    puzzle.write( new File( dir, name ).getPath() );
+                else {
+                    if (i > 0)
+                        System.out.println( ClueReader.kSeparator );
+                    puzzle.write( System.out );
+                }
+                System.err.println( name + ": " + puzzle.getNumClues() + " clues, " +
+                                    generator.getGuesses() + " guesses");
+            }
+        }
+        catch (Exception ex) {
+            System.err.println("Can't generate puzzle: " + ex );
+            System.exit( 1 );
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  Constructor
+    //----------------------------------------------------------------------
+    public PuzzleGenerator( int inSize, long inSeed )
+    {
+        _size = inSize;
+        _random = new Random( inSeed );
+    }
+
+    //----------------------------------------------------------------------
+    //  Accessors
+    //----------------------------------------------------------------------
+    public int  getGuesses()        { return _guesses; }
+
+    public void setTargetGuesses( int inMin, int inMax )
+    {
+        _minGuesses = inMin;
+        _maxGuesses = inMax;
+    }
+
+    public void setMaxTries( int inTries )  { _maxTries = Math.max( inTries, 1 ); }
+    public void setNodeLimit( long inLimit )    { _nodeLimit = inLimit; }
+
+    //----------------------------------------------------------------------
+    //  generate -- a puzzle with one answer, as close to the target number
+    //  of guesses as _maxTries puzzles get.
+    //----------------------------------------------------------------------
+    public ClueFile generate( String inName )
+        throws Exception
+    {
+        ClueFile best = null;
+        int bestGuesses = 0, bestMiss = Integer.MAX_VALUE;
+
+        for (int i = 0; (i < _maxTries) && (bestMiss > 0); i++) {
+            ClueFile puzzle = generateOne( inName );
+            int miss = (_guesses < _minGuesses) ? _minGuesses - _guesses :
+                       (_guesses > _maxGuesses) ? _guesses - _maxGuesses : 0;
+
+            if (miss < bestMiss) {
+                best = puzzle;
+                bestGuesses = _guesses;
+                bestMiss = miss;
+            }
+        }
+        _guesses = bestGuesses;
+        return best;
+    }
+
+    //----------------------------------------------------------------------
+    //  generateOne -- choose a solution, find clues for it, minimize them.
+    //----------------------------------------------------------------------
+    ClueFile generateOne( String inName )
+        throws Exception
+    {
+        chooseSolution();
+
+        Vector clues = findClues();
+        minimize( clues );
+
+        ClueFile puzzle = makePuzzle( inName, clues );
+        LogicEngine engine = newEngine( clues );
+        engine.solve();
+        _guesses = engine.getStatistics().getGuesses();
+        return puzzle;
+    }
+
+    //----------------------------------------------------------------------
+    //  chooseSolution -- shuffle each variable's values into positions,
+    //  and write the clues that don't depend on them.
+    //----------------------------------------------------------------------
+    void chooseSolution()
+    {
+        _position = new int[_size][_size];
+        _place = new int[_size][_size];
+        _definitions = new Vector();
+        _goals = new Vector();
+
+        for (int v = 0; v < _size; v++) {
+            for (int i = 0; i < _size; i++)
+                _position[v][i] = i;
+            for (int i = _size - 1; i > 0; i--) {       // shuffle
+                int j = _random.nextInt( i + 1 );
+                int temp = _position[v][i]; _position[v][i] = _position[v][j]; _position[v][j] = temp;
+            }
+            for (int i = 0; i < _size; i++) {
+                _place[v][_position[v][i]] = i;
+                _definitions.addElement( valueName( v, i ) + " ISA kind" + v );
+            }
+        }
+        for (int v = 1; v < _size; v++)
+            _definitions.addElement("kind0 with" + v + " kind" + v );
+
+        StringBuffer answer = new StringBuffer("ANSWER");
+        for (int v = 0; v < _size; v++)
+            answer.append(" kind" + v );
+        _goals.addElement("SOLVE kind0 with1 " + valueName( 1, _random.nextInt( _size )));
+        _goals.addElement( answer.toString() );
+    }
+
+    //----------------------------------------------------------------------
+    //  findClues -- add random true clues to an engine until its answer is
+    //  unique.  Uniqueness is only checked every _size clues, since it
+    //  costs a search; minimize() takes out any extra.
+    //----------------------------------------------------------------------
+    Vector findClues()
+        throws Exception
+    {
+        Vector clues = new Vector();
+        Hashtable seen = new Hashtable();
+        LogicEngine engine = newEngine( clues );
+        int misses = 0;
+        String clue;
+
+        engine.prepare();
+        while (true) {
+            clue = randomClue();
+            if ((clue == null) || seen.containsKey( clue )) {
+                if (++misses > 1000 * _size)
+                    throw new Exception("Ran out of clues with " + clues.size() + " found");
+                continue;
+            }
+            seen.put( clue, clue );
+            clues.addElement( clue );
+
+            if (engine.addClue( clue ))
+                return clues;       // solved without guessing
+            if (((clues.size() % _size) == 0) && isUnique( clues ))
+                return clues;
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  minimize -- in random order, drop each clue the answer is still
+    //  unique without.
+    //----------------------------------------------------------------------
+    void minimize( Vector inClues )
+        throws Exception
+    {
+        Object order[] = new Object[inClues.size()];
+
+        inClues.copyInto( order );
+        for (int i = order.length - 1; i > 0; i--) {    // shuffle
+            int j = _random.nextInt( i + 1 );
+            Object temp = order[i]; order[i] = order[j]; order[j] = temp;
+        }
+
+        for (int i = 0; i < order.length; i++) {
+            int index = inClues.indexOf( order[i] );
+            inClues.removeElementAt( index );
+
+            if (!isUnique( inClues ))
+                inClues.insertElementAt( order[i], index );    // needed
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  randomClue -- a clue that's true of the solution, or null if the
+    //  kind of clue chosen doesn't fit where the value chosen is.
+    //----------------------------------------------------------------------
+    String randomClue()
+    {
+        int varA = _random.nextInt( _size );
+        int varB = _random.nextInt( _size );
+        int a = _random.nextInt( _size );
+        int pos = _position[varA][a];
+        int kind = _random.nextInt( 10 );
+
+        if (kind < 3) {
+            int next = (pos == 0) ? 1 : (pos == _size - 1) ? pos - 1 :
+                            (_random.nextBoolean() ? pos - 1 : pos + 1);
+            return valueName( varA, a ) + " NEXT_TO " + valueName( varB, _place[varB][next] );
+
+        } else if (kind < 5) {
+            if (pos > 0)
+                return valueName( varA, a ) + " IMMED_RIGHT_OF " +
+                       valueName( varB, _place[varB][pos - 1] );
+
+        } else if (kind < 7) {
+            if (pos < _size - 1)
+                return valueName( varA, a ) + " IMMED_LEFT_OF " +
+                       valueName( varB, _place[varB][pos + 1] );
+
+        } else if (kind < 9) {
+            if (varA != varB) {
+                int low = Math.min( varA, varB ), high = Math.max( varA, varB );
+                return valueName( low, _place[low][pos] ) + " with" + high + " " +
+                       valueName( high, _place[high][pos] );
+            }
+
+        } else if (pos == 0) {
+            return valueName( varA, a ) + " IS_LOCATED AT_LEFT";
+        } else if (pos == _size - 1) {
+            return valueName( varA, a ) + " IS_LOCATED AT_RIGHT";
+        } else if (((_size % 2) == 1) && (pos == _size / 2)) {
+            return valueName( varA, a ) + " IS_LOCATED IN_MIDDLE";
+        }
+        return null;
+    }
+
+    //  true if the puzzle with these clues has just the one answer
+    boolean isUnique( Vector inClues )
+        throws Exception
+    {
+        ExactCoverSolver solver = new ExactCoverSolver( _size, makePuzzle("", inClues ).getClues() );
+
+        solver.setNodeLimit( _nodeLimit );
+        return solver.countSolutions( 2 ) == 1;
+    }
+
+    //  an engine for the puzzle with these clues
+    LogicEngine newEngine( Vector inClues )
+    {
+        return new LogicEngine( _size, makePuzzle("", inClues ).getClues() );
+    }
+
+    //  the definitions, then these clues, then the goals
+    ClueFile makePuzzle( String inName, Vector inClues )
+    {
+        String clues[] = new String[_definitions.size() + inClues.size() + _goals.size()];
+        int n = 0;
+
+        for (int i = 0; i < _definitions.size(); i++)
+            clues[n++] = (String) _definitions.elementAt( i );
+        for (int i = 0; i < inClues.size(); i++)
+            clues[n++] = (String) inClues.elementAt( i );
+        for (int i = 0; i < _goals.size(); i++)
+            clues[n++] = (String) _goals.elementAt( i );
+        return new ClueFile( inName, _size, clues );
+    }
+
+    //  e.g. "C4", the fifth value of the third variable
+    static String valueName( int inVar, int inValue )
+    {
+        return "" + (char) ('A' + inVar) + inValue;
+    }
+
+}   // end of class definition
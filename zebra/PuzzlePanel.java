@@ -18,6 +18,7 @@ class PuzzlePanel extends Panel
     Thread      _thread;
     LogicEngine _engine;
     LogicMatrixPanel    _logic;
+    SolverViewAdapter   _view;
     List        _clueList;
     TextArea    _solutionText;
     boolean     _solutionPosted = false;
@@ -31,11 +32,13 @@ class PuzzlePanel extends Panel
         super();
         _thread = thread;
         _engine = inEngine;
-        _engine.setWaitOnChange( true );    // have engine wait for our clicks
 
         Panel panel = new Panel();
 
         _logic = new LogicMatrixPanel( _engine );
+        _view = new SolverViewAdapter( _engine, _logic );
+        _logic.setViewAdapter( _view );
+        _engine.addSolverListener( _view );     // replay engine's work on our clicks
         _clueList = new List( 10, false );      // 10 lines visible
         _solutionText = new TextArea("Solution:\n", 6, 80);
 
@@ -63,26 +66,26 @@ class PuzzlePanel extends Panel
 
             if (((String)inName).equals("Solve")) {
 
-                _engine.setWaitOnChange( false );
-                _thread.resume();
-                while (_thread.isAlive())
-                    Thread.yield();
-
-                if (!_solutionPosted)
-                    _solutionText.appendText( _engine.getSolutionString() );
-                _solutionPosted = true;
+                _view.setStepping( false );     // show everything from now on
+                try {
+                    _thread.join();
+                }
+                catch (InterruptedException ex) { }
             }
 
         //  if (((String)inName).equals("Next"))
         //      _logic.setPartialUpdate( true );        // just one click
 
-            if (_thread.isAlive()) {
+            if (!_thread.isAlive())
+                _view.finish();         // engine's done, take the rest of its work
+
+            if (_view.step()) {
 
-                _clueList.select( _engine.getClueID() );
-                _clueList.makeVisible( _engine.getClueID() );
-                _thread.resume();
+                _clueList.select( _view.getClueID() );
+                _clueList.makeVisible( _view.getClueID() );
+            }
 
-            } else {
+            if (!_thread.isAlive() && !_view.hasPending()) {
 
                 _clueList.select( _clueList.countItems() );
                 _clueList.makeVisible( _clueList.countItems() );
@@ -10,55 +10,135 @@ import java.util.*;
 import Variable;
 
 
+//----------------------------------------------------------------------
+//  LogicFailureException -- the matrices contradict themselves.  The
+//  conflict holds the guess levels the contradiction depends on (see
+//  SolverContext.levelBit), all of them if we don't know.
+//
+//  The search throws and catches these by the thousand, so there's no
+//  stack trace: they say what went wrong with the puzzle, not where in
+//  the code.  A matrix's own failures keep the cell and make the
+//  message from it only if getMessage() is called.
+//----------------------------------------------------------------------
+
 class LogicFailureException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    static final int kOverwrite = 0;        // a cell set both YES and NO
+    static final int kNoneInColumn = 1;     // a column of NO's
+    static final int kNoneInRow = 2;        // a row of NO's
+
+    long    _conflict;
+    transient RelationMatrix _matrix = null;    // or null if the message is given
+    int     _kind, _x, _y, _what;
+
     public LogicFailureException( String inMessage )
+    {
+        this( inMessage, -1L );
+    }
+
+    public LogicFailureException( String inMessage, long inConflict )
     {
         super( inMessage );
+        _conflict = inConflict;
+    }
+
+    public LogicFailureException( RelationMatrix inMatrix, int inKind, int x, int y,
+                                  int inWhat, long inConflict )
+    {
+        _matrix = inMatrix;
+        _kind = inKind;
+        _x = x;
+        _y = y;
+        _what = inWhat;
+        _conflict = inConflict;
+    }
+
+    public long getConflict()   { return _conflict; }
+
+    public String getMessage()
+    {
+        if (_matrix == null)
+            return super.getMessage();
+
+        Variable varA = _matrix.getVariableA(), varB = _matrix.getVariableB();
+        switch (_kind) {
+        case kNoneInColumn:
+            return "No " + varA.getName() + " left for " + varB.getValueByIndex( _y );
+        case kNoneInRow:
+            return "No " + varB.getName() + " left for " + varA.getValueByIndex( _x );
+        default:
+            return "Request to overwrite Matrix entry " + _x + ", " + _y + " in matrix " +
+                   varA.getName() + " vs. " + varB.getName() + " with " + _what;
+        }
+    }
+
+    public Throwable fillInStackTrace()
+    {
+        return this;
     }
 }
 
 public class RelationMatrix
 {
-    int         _matrix[][];
+    // Cells are packed one bit per cell, a word per row and a word per column.
+    // "possible" bits are cleared by a NO, "decided" bits are set by YES or NO:
+    //      UNSET = !decided,  YES = decided & possible,  NO = decided & !possible
+    // The words live in the context's cell image with every other matrix's,
+    // see SolverContext.allocateCells(); these are offsets into it.
+    long        _cells[];                           // the context's image
+    int         _rowPossible, _rowDecided;          // [x], bit y
+    int         _colPossible, _colDecided;          // [y], bit x
+    int         _reasons;       // [x * size + y], guess levels a decided cell depends on
+    long        _fullMask;                          // one bit per value
     Variable    _varA, _varB;
     int         _size;
-    static Stack    sSetCmdList = new Stack();
+    SolverContext   _context;       // undo trail and activity, shared by engine
+    int         _id;                // index of this matrix in the context
 
     static final int UNSET = 0;
     static final int YES = 1;
     static final int NO = 2;
 
-    // class variables to check on recent activity
-    static Value    sMostRecentValueA = null, sMostRecentValueB = null;
-    static boolean  sChanged = false;
-    static boolean  sDoWaitOnChange = true;
-
     //----------------------------------------------------------------------
     //  Constructor -- assumes a square matrix, can't 1-to-1 relate unequal
-    //  size sets.
+    //  size sets.  A row or column must fit in a word, so at most 64 values.
     //----------------------------------------------------------------------
-    public RelationMatrix( Variable inVarA, Variable inVarB )
+    public RelationMatrix( SolverContext inContext, Variable inVarA, Variable inVarB )
+        throws Exception
     {
         _size = inVarA.getValueCount();
-        _matrix = new int[_size][_size];
+        if (_size > 64)
+            throw new Exception("ERROR: " + inVarA.getName() + " has " + _size +
+                                " values, no more than 64 allowed");
+
+        _fullMask = (_size == 64) ? -1L : (1L << _size) - 1;
         _varA = inVarA;
         _varB = inVarB;
+        _context = inContext;
+        _id = inContext.registerMatrix( this );
+
+        _rowPossible = inContext.allocateCells( (4 + _size) * _size );
+        _rowDecided = _rowPossible + _size;
+        _colPossible = _rowDecided + _size;
+        _colDecided = _colPossible + _size;
+        _reasons = _colDecided + _size;
+        for (int i = 0; i < _size; i++) {
+            _cells[_rowPossible + i] = _fullMask;
+            _cells[_colPossible + i] = _fullMask;
+        }
     }
 
-    //----------------------------------------------------------------------
-    //  static accessors for state of class
-    //----------------------------------------------------------------------
-    public static Value getMostRecentValueA()   { return sMostRecentValueA; }
-    public static Value getMostRecentValueB()   { return sMostRecentValueB; }
-    public static boolean getChanged()          { return sChanged; }
-    public static void setChanged( boolean inFlag ) { sChanged = inFlag; }
-    public static void setWaitOnChange( boolean inFlag )    { sDoWaitOnChange = inFlag; }
-
     //----------------------------------------------------------------------
     //  Accessors
     //----------------------------------------------------------------------
     public Variable getVariableA()                  { return _varA; }
     public Variable getVariableB()                  { return _varB; }
+    public SolverContext getContext()               { return _context; }
+    public int      getID()                         { return _id; }
+    public int      getSize()                       { return _size; }
+    public long     getRowUnset( int x )            { return ~_cells[_rowDecided + x] & _fullMask; }
+    public long     getColumnUnset( int y )         { return ~_cells[_colDecided + y] & _fullMask; }
     public Variable getOtherVariable( Variable inVar )
         throws Exception
     {
@@ -71,15 +151,47 @@ public class RelationMatrix
                         "matrix: " + this );
     }
 
+    //----------------------------------------------------------------------
+    //  getCell -- decode the UNSET/YES/NO state of one cell
+    //----------------------------------------------------------------------
+    int getCell( int x, int y )
+    {
+        long bit = 1L << y;
+
+        if ((_cells[_rowDecided + x] & bit) == 0)
+            return UNSET;
+        return ((_cells[_rowPossible + x] & bit) != 0) ? YES : NO;
+    }
+
+    //----------------------------------------------------------------------
+    //  markCell, clearCell -- keep the row and column words in step
+    //----------------------------------------------------------------------
+    void markCell( int x, int y, int what )
+    {
+        _cells[_rowDecided + x] |= 1L << y;
+        _cells[_colDecided + y] |= 1L << x;
+        if (what == NO) {
+            _cells[_rowPossible + x] &= ~(1L << y);
+            _cells[_colPossible + y] &= ~(1L << x);
+        }
+    }
+
+    void clearCell( int x, int y )
+    {
+        _cells[_rowDecided + x] &= ~(1L << y);
+        _cells[_colDecided + y] &= ~(1L << x);
+        _cells[_rowPossible + x] |= 1L << y;
+        _cells[_colPossible + y] |= 1L << x;
+    }
+
     //----------------------------------------------------------------------
     //  isFullyRelated -- return true if no element is UNSET
     //----------------------------------------------------------------------
     public boolean isFullyRelated( )
     {
         for (int i = 0; i < _size; i++ )
-            for (int j = 0; j < _size; j++ )
-                if (_matrix[i][j] == UNSET)
-                    return false;
+            if (_cells[_rowDecided + i] != _fullMask)
+                return false;
         return true;
     }
 
@@ -107,7 +219,40 @@ public class RelationMatrix
             int temp = i; i = j; j = temp;      // swap indices
         }
 
-        return _matrix[i][j];
+        int cell = getCell( i, j );
+        if (cell != UNSET)
+            _context._reason |= _cells[_reasons + i * _size + j];
+        return cell;
+    }
+
+    //----------------------------------------------------------------------
+    //  getReason, getLineReason -- the guess levels a cell depends on, and
+    //  the levels all the cells of a row (x) or column (y) depend on.
+    //  Only the cells in inCells count, one bit per index along the line.
+    //----------------------------------------------------------------------
+    long getReason( int x, int y )      { return _cells[_reasons + x * _size + y]; }
+
+    long getReason( Value inValueA, Value inValueB )
+    {
+        if (_varA == inValueA.getVariable())
+            return _cells[_reasons + inValueA.getIndex() * _size + inValueB.getIndex()];
+        return _cells[_reasons + inValueB.getIndex() * _size + inValueA.getIndex()];
+    }
+
+    long getRowReason( int x, long inCells )
+    {
+        long reason = 0;
+        for ( ; inCells != 0 ; inCells &= inCells - 1)
+            reason |= _cells[_reasons + x * _size + Long.numberOfTrailingZeros( inCells )];
+        return reason;
+    }
+
+    long getColumnReason( int y, long inCells )
+    {
+        long reason = 0;
+        for ( ; inCells != 0 ; inCells &= inCells - 1)
+            reason |= _cells[_reasons + Long.numberOfTrailingZeros( inCells ) * _size + y];
+        return reason;
     }
 
     //----------------------------------------------------------------------
@@ -116,6 +261,13 @@ public class RelationMatrix
     //----------------------------------------------------------------------
     public void setRelation( Value inValueA, Value inValueB )
         throws Exception, LogicFailureException
+    {
+        setRelation( inValueA, inValueB, _context._reason );
+    }
+
+    //  inReason -- the guess levels that led to this relation
+    void setRelation( Value inValueA, Value inValueB, long inReason )
+        throws Exception, LogicFailureException
     {
         if (inValueA == inValueB)
             return;
@@ -127,7 +279,7 @@ public class RelationMatrix
             int temp = i; i = j; j = temp;      // swap indices
         }
 
-        set( i, j, YES );               // throws on bad set
+        set( i, j, YES, inReason );     // throws on bad set
     }
 
     //----------------------------------------------------------------------
@@ -138,6 +290,12 @@ public class RelationMatrix
     //----------------------------------------------------------------------
     public void setNoRelation( Value inValueA, Value inValueB )
         throws Exception, LogicFailureException
+    {
+        setNoRelation( inValueA, inValueB, _context._reason );
+    }
+
+    void setNoRelation( Value inValueA, Value inValueB, long inReason )
+        throws Exception, LogicFailureException
     {
         int i = inValueA.getIndex();
         int j = inValueB.getIndex();
@@ -146,38 +304,38 @@ public class RelationMatrix
             int temp = i; i = j; j = temp;      // swap indices
         }
 
-        set( i, j, NO );
+        set( i, j, NO, inReason );
     }
 
     //----------------------------------------------------------------------
     //  checkPositiveRelation -- see if we can deduce a relation from the
     //  current matrix.  i.e. if all cells in this row or column are NO's
-    //  but one, then, ergo, we have a YES.
+    //  but one, then, ergo, we have a YES.  If they are all NO's then
+    //  the logic has gone bad.
     //----------------------------------------------------------------------
     public void checkPositiveRelationByElimination( int x, int y )
         throws Exception, LogicFailureException     // asserts sets are done properly
     {
-        int no = 0;
-
-        // check row
-        for (int i = 0; i < _size; i++)
-            if (_matrix[i][y] == NO)
-                no++;
-        if (no == _size-1) {        // found a positive hit
-            for (int i = 0; i < _size; i++)
-                if (_matrix[i][y] == UNSET)
-                    set( i, y, YES );
+        // check row.  Whatever we find follows from all the NO's in it.
+        long left = _cells[_colPossible + y];
+        if (left == 0)
+            throw new LogicFailureException( this, LogicFailureException.kNoneInColumn,
+                                             x, y, NO, getColumnReason( y, _fullMask ));
+        if (Long.bitCount( left ) == 1 && (_cells[_colDecided + y] & left) == 0) {
+            _context._stats._eliminations++;
+            set( Long.numberOfTrailingZeros( left ), y, YES,    // found a positive hit
+                 getColumnReason( y, _fullMask & ~left ));
         }
 
         // check column
-        no = 0;
-        for (int i = 0; i < _size; i++)
-            if (_matrix[x][i] == NO)
-                no++;
-        if (no == _size-1) {        // found a positive hit
-            for (int i = 0; i < _size; i++)
-                if (_matrix[x][i] == UNSET)
-                    set( x, i, YES );
+        left = _cells[_rowPossible + x];
+        if (left == 0)
+            throw new LogicFailureException( this, LogicFailureException.kNoneInRow,
+                                             x, y, NO, getRowReason( x, _fullMask ));
+        if (Long.bitCount( left ) == 1 && (_cells[_rowDecided + x] & left) == 0) {
+            _context._stats._eliminations++;
+            set( x, Long.numberOfTrailingZeros( left ), YES,    // found a positive hit
+                 getRowReason( x, _fullMask & ~left ));
         }
     }
 
@@ -188,69 +346,89 @@ public class RelationMatrix
     //  in other matrices (e.g. if "American owns dog" and
     //  "American livesIn blueDoor" then so does the dog.
     //
-    //  Returns the command generated by this set.
+    //  inReason is the set of guess levels this setting depends on; all
+    //  that follows from it depends on them too.
     //
     //  Throws if overwriting an existing 'set'
     //----------------------------------------------------------------------
-    SetCommand set( int x, int y, int what )
+    void set( int x, int y, int what, long inReason )
         throws Exception, LogicFailureException
     {
-        SetCommand outCommand = null;
+        int cell = getCell( x, y );
 
-        if (((_matrix[x][y] == NO) && (what == YES)) ||
-            ((_matrix[x][y] == YES) && (what == NO)))
+        if (((cell == NO) && (what == YES)) ||
+            ((cell == YES) && (what == NO)))
         {
             // Uh oh, bad logic to override previous deduction
-            throw new LogicFailureException("Request to overwrite Matrix entry "
-                + x + ", " + y + " in matrix " + _varA.getName() + " vs. "
-                + _varB.getName() + " with " + what);
+            throw new LogicFailureException( this, LogicFailureException.kOverwrite,
+                                             x, y, what, inReason | _cells[_reasons + x * _size + y]);
         }
 
-        if (_matrix[x][y] == UNSET) {
+        if (cell == UNSET) {
 
-            // wait for a click or something here.
-            if (sDoWaitOnChange)
-                Thread.currentThread().suspend();
-
-            outCommand = new SetCommand( this, x, y, what );
-            sSetCmdList.push( outCommand );
-            _matrix[x][y] = what;
+            markCell( x, y, what );
+            _cells[_reasons + x * _size + y] = inReason;
+            _context.recordSet( this, x, y, what );
+            _context._stats._cellSets++;
 
             Value valA = _varA.getValueByIndex( x );
             Value valB = _varB.getValueByIndex( y );
 
-            sMostRecentValueA = valA;
-            sMostRecentValueB = valB;
-            sChanged = true;
-
             if (what == YES) {
                 // we have a relation, fill out rest of row and column with NO's
                 for (int i = 0; i < _size; i++ ) {
                     if (i != x)
-                        set( i, y, NO );
+                        set( i, y, NO, inReason );
                     if (i != y)
-                        set( x, i, NO );
+                        set( x, i, NO, inReason );
                 }
                 // propagate positive and negative relations to other related matrices
-                findTransitiveRelations( valA, valB );
-                findTransitiveRelations( valB, valA );
+                _context._stats._transitive++;
+                if (_context._classes != null)
+                    _context._classes.join( valA, valB, inReason );
+                else {
+                    findTransitiveRelations( valA, valB, inReason );
+                    findTransitiveRelations( valB, valA, inReason );
+                }
 
             } else if (what == NO) {
                 checkPositiveRelationByElimination( x, y );
+                if (_context._classes != null)
+                    _context._classes.separate( valA, valB, inReason );
             }
         }
-        return outCommand;
     }
 
     //----------------------------------------------------------------------
-    //  unset -- stuff for undoing hypotheses, see class SetCommand
+    //  unset -- stuff for undoing hypotheses, see SolverContext.rewind()
     //----------------------------------------------------------------------
     void unset( int x, int y )
     {
-        _matrix[x][y] = UNSET;
-        // wait for a click or something here.
-        if (sDoWaitOnChange)
-            Thread.currentThread().suspend();
+        clearCell( x, y );
+        _context.recordUnset( this, x, y );
+    }
+
+    //----------------------------------------------------------------------
+    //  fireRestored -- the context just restored a snapshot over inOld, the
+    //  image before.  Tell the listener about each cell that changed.
+    //----------------------------------------------------------------------
+    void fireRestored( long inOld[] )
+    {
+        long changed;
+        int y, cell;
+
+        for (int x = 0; x < _size; x++) {
+            changed = (inOld[_rowDecided + x] ^ _cells[_rowDecided + x]) |
+                      (inOld[_rowPossible + x] ^ _cells[_rowPossible + x]);
+            for ( ; changed != 0; changed &= changed - 1) {
+                y = Long.numberOfTrailingZeros( changed );
+                cell = getCell( x, y );
+                if (cell == UNSET)
+                    _context._listener.cellUnset( this, x, y );
+                else
+                    _context._listener.cellSet( this, x, y, cell );
+            }
+        }
     }
 
     //----------------------------------------------------------------------
@@ -259,10 +437,13 @@ public class RelationMatrix
     //  variable's values. Also check for transitive negative relations
     //  i.e. we know X<->Y, so if X<->Z then make Y<->Z
     //  also if X<->Y, then if X !-> Z then Y !-> Z
+    //  inReason is what X<->Y depends on.
     //----------------------------------------------------------------------
-    public void findTransitiveRelations( Value inValueX, Value inValueY )
+    public void findTransitiveRelations( Value inValueX, Value inValueY, long inReason )
         throws Exception, LogicFailureException
     {
+        RelationMatrix target;
+
         // go through all of variable A's matrices
         for (Enumeration e = inValueX.getVariable().getMatrixVector().elements() ; e.hasMoreElements() ; ) {
 
@@ -272,23 +453,21 @@ public class RelationMatrix
             if (mat.relates( inValueY.getVariable() ))
                 continue;
 
-            // see if we match anything in this matrix
-            Value valueZ = mat.getPositiveRelation( inValueX );
+            target = inValueY.getVariable().getMatrixForVariable(
+                                                    mat.getOtherVariable( inValueX.getVariable() ));
 
-            try {
-                // if a match also (Z), then make the transitive relation
-                // between this match and X's first value match (Y).
+            // see if we match anything in this matrix
+            Value valueZ = mat.findPositiveRelation( inValueX );
 
-                if (valueZ != null) {
-                    inValueY.setRelation( valueZ );
-                }
-            } catch (Exception ex) {    // if we're here then inconsistent logic
-                throw new LogicFailureException("Inconsistent Logic:" + ex );
-            }
+            // if a match also (Z), then make the transitive relation
+            // between this match and X's first value match (Y).
+            if (valueZ != null)
+                target.setRelation( inValueY, valueZ,
+                                    inReason | mat.getReason( inValueX, valueZ ));
 
             // find any negative matches also (Z), then make the transitive
             // negative relation between this match and X's first value match (Y).
-            mat.setNegativeRelations( inValueX, inValueY );
+            mat.setNegativeRelations( inValueX, inValueY, target, inReason );
         }
     }
 
@@ -299,15 +478,30 @@ public class RelationMatrix
     public Value getPositiveRelation( Value inValue )
         throws Exception
     {
+        Value related = findPositiveRelation( inValue );
+
+        if (related != null)
+            _context._reason |= getReason( inValue, related );
+        return related;
+    }
+
+    //  findPositiveRelation -- the same, but doesn't count as a reason
+    //  for what's set next.
+    Value findPositiveRelation( Value inValue )
+        throws Exception
+    {
+        int index = inValue.getIndex();
+        long yes;
+
         if (_varA == inValue.getVariable()) {
-            for (int i = 0; i < _size; i++)
-                if (_matrix[inValue.getIndex()][i] == YES)
-                    return _varB.getValueByIndex( i );
+            yes = _cells[_rowPossible + index] & _cells[_rowDecided + index];
+            if (yes != 0)
+                return _varB.getValueByIndex( Long.numberOfTrailingZeros( yes ));
 
         } else if (_varB == inValue.getVariable()) {
-            for (int i = 0; i < _size; i++)
-                if (_matrix[i][inValue.getIndex()] == YES)
-                    return _varA.getValueByIndex( i );
+            yes = _cells[_colPossible + index] & _cells[_colDecided + index];
+            if (yes != 0)
+                return _varA.getValueByIndex( Long.numberOfTrailingZeros( yes ));
         } else
             throw new Exception( inValue.getName() + " not a member of matrix ("
                                     + getVariableA().getName() + ", "
@@ -316,117 +510,80 @@ public class RelationMatrix
     }
 
     //----------------------------------------------------------------------
-    //  setNegativeRelation -- if any negative relations for inValue in this
-    //  matrix (valueZ), then add transitive negative relation with inValueY
+    //  findPossible -- getPossible(), but doesn't count as a reason
     //----------------------------------------------------------------------
-    public void setNegativeRelations( Value inValue, Value inValueY )
+    long findPossible( Value inValue )
         throws Exception
     {
-        if (_varA == inValue.getVariable()) {
-            for (int i = 0; i < _size; i++)
-                if (_matrix[inValue.getIndex()][i] == NO)
-                    inValueY.setNoRelation( _varB.getValueByIndex( i ));
-
-        } else if (_varB == inValue.getVariable()) {
-            for (int i = 0; i < _size; i++)
-                if (_matrix[i][inValue.getIndex()] == NO)
-                    inValueY.setNoRelation( _varA.getValueByIndex( i ));
-        } else
+        if (_varA == inValue.getVariable())
+            return _cells[_rowPossible + inValue.getIndex()];
+        else if (_varB == inValue.getVariable())
+            return _cells[_colPossible + inValue.getIndex()];
+        else
             throw new Exception( inValue.getName() + " not a member of matrix ("
                                     + getVariableA().getName() + ", "
                                     + getVariableB().getName() + ")");
     }
 
     //----------------------------------------------------------------------
-    //  setNextPositiveRelation -- pick a relation and set it to
-    //  YES.  Used for casting about for a final solution when clues are
-    //  exhausted.  This should probably be done more deterministically.
-    //
-    //  Throws if this 'set' propagates out to an illegal operation.
+    //  getPossible -- the values of the other variable this value could
+    //  still relate to (YES or UNSET), one bit per value index.
     //----------------------------------------------------------------------
-    public SetCommand setNextPositiveRelation()
-        throws Exception, LogicFailureException
+    public long getPossible( Value inValue )
+        throws Exception
     {
-        for (int i = 0; i < _size; i++ )
-            for (int j = 0; j < _size; j++ )
-                if (_matrix[i][j] == UNSET)
-                    return set( i, j, YES );
+        int index = inValue.getIndex();
 
-        return null;    // no set made
+        if (_varA == inValue.getVariable()) {
+            _context._reason |= getRowReason( index,
+                                    _cells[_rowDecided + index] & ~_cells[_rowPossible + index] );
+            return _cells[_rowPossible + index];
+        } else if (_varB == inValue.getVariable()) {
+            _context._reason |= getColumnReason( index,
+                                    _cells[_colDecided + index] & ~_cells[_colPossible + index] );
+            return _cells[_colPossible + index];
+        } else
+            throw new Exception( inValue.getName() + " not a member of matrix ("
+                                    + getVariableA().getName() + ", "
+                                    + getVariableB().getName() + ")");
     }
 
     //----------------------------------------------------------------------
-    //  setNextPositiveRelationAfter -- find next unset relation after that
-    //  given in the last command/guess.
-    //
-    //  Throws if this 'set' propagates out to an illegal operation.
+    //  setNegativeRelation -- if any negative relations for inValue in this
+    //  matrix (valueZ), then add transitive negative relation with inValueY
+    //  in the target matrix.  The NO word is re-read each time round since
+    //  setting relations elsewhere can add more NO's here.
+    //  inReason is what inValue<->inValueY depends on.
     //----------------------------------------------------------------------
-    public SetCommand setNextPositiveRelationAfter( SetCommand inCommand )
-        throws Exception, LogicFailureException
+    public void setNegativeRelations( Value inValue, Value inValueY,
+                                      RelationMatrix inTarget, long inReason )
+        throws Exception
     {
-        boolean setNow = false;
-        int ix = 0;     // start indices for next guess search.
-        int jy = 0;
-
-        if (inCommand.matrix == this) {
-            ix = inCommand.x;       // start stepping through from last command
-            jy = inCommand.y + 1;   // plus one, if last position in matrix then
-            if (jy >= _size) {      // skip whole matrix
-                jy = 0;
-                ix += 1;
-                if (ix >= _size)
-                    return null;
-            }
-        }
-
-        for (int i = ix; i < _size; i++ ) {
+        int index = inValue.getIndex();
+        long done = 0, no, bit;
+        int z;
 
-            if (i != ix)
-                jy = 0;
-
-            for (int j = jy; j < _size; j++ ) {
-                if (_matrix[i][j] == UNSET)
-                    return set( i, j, YES );
+        if (_varA == inValue.getVariable()) {
+            while ((no = _cells[_rowDecided + index] & ~_cells[_rowPossible + index] & ~done) != 0) {
+                bit = no & -no;
+                done |= bit;
+                z = Long.numberOfTrailingZeros( bit );
+                inTarget.setNoRelation( inValueY, _varB.getValueByIndex( z ),
+                                        inReason | _cells[_reasons + index * _size + z] );
             }
-        }
-
-        return null;    // no set made
-    }
-
 
-    //----------------------------------------------------------------------
-    // unused
-    //----------------------------------------------------------------------
-    static public void undo()
-    {
-        SetCommand command = (SetCommand) sSetCmdList.pop();
-        command.undo();
-    }
-
-    //----------------------------------------------------------------------
-    //  lastCommand -- return last 'set' command issued.
-    //----------------------------------------------------------------------
-    public static SetCommand lastCommand()
-    {
-        return (SetCommand) sSetCmdList.peek();
-    }
-
-    //----------------------------------------------------------------------
-    //  undoToCommand -- undo all commands up to, but not including, the
-    //  given command.
-    //  Return the last command undone.
-    //----------------------------------------------------------------------
-    public static SetCommand undoToCommand( SetCommand inCommand )
-    {
-        SetCommand lastCommand = null;
-
-        for (SetCommand cmd = (SetCommand) sSetCmdList.pop(); cmd != inCommand;
-                        cmd = (SetCommand) sSetCmdList.pop()) {
-            lastCommand = cmd;
-            cmd.undo();
-        }
-
-        return lastCommand;
+        } else if (_varB == inValue.getVariable()) {
+            while ((no = _cells[_colDecided + index] & ~_cells[_colPossible + index] & ~done) != 0) {
+                bit = no & -no;
+                done |= bit;
+                z = Long.numberOfTrailingZeros( bit );
+                inTarget.setNoRelation( inValueY, _varA.getValueByIndex( z ),
+                                        inReason | _cells[_reasons + z * _size + index] );
+            }
+        } else
+            throw new Exception( inValue.getName() + " not a member of matrix ("
+                                    + getVariableA().getName() + ", "
+                                    + getVariableB().getName() + ")");
     }
 
     //----------------------------------------------------------------------
@@ -438,7 +595,7 @@ public class RelationMatrix
 
         for (int i = 0; i < _size; i++ ) {
             for (int j = 0; j < _size; j++ )
-                s.append( _matrix[i][j] );
+                s.append( getCell( i, j ));
             s.append("\n");
         }
         return s.toString();
@@ -453,7 +610,8 @@ public class RelationMatrix
 //----------------------------------------------------------------------
 //  SetCommand
 //
-//  A command that can be undone to set a matrix cell to a particular value.
+//  A matrix cell and the value to set it to, e.g. the guess a
+//  BranchingStrategy picks.  Undo goes through SolverContext's trail.
 //----------------------------------------------------------------------
 
 class SetCommand
@@ -469,10 +627,4 @@ class SetCommand
         what = inWhat;
     }
 
-    public void undo()  {   matrix.unset( x, y );   }
-    public void redo()
-    {   try { matrix.set( x, y, what ); }
-        catch (Exception ex) { }
-    }
-
 }
@@ -0,0 +1,46 @@
+//----------------------------------------------------------------------
+//  SolutionEnumeration
+//
+//  Enumerates the solutions of a LogicEngine's clues.  Each one is only
+//  searched for when it's asked about, so an under-constrained puzzle
+//  can be looked at a few answers at a time.
+//
+//  Ex:
+//    for (SolutionEnumeration e = engine.solutions() ; e.hasMoreSolutions() ;)
+//        String s = e.nextSolution();
+//----------------------------------------------------------------------
+
+import java.util.*;
+
+public class SolutionEnumeration
+{
+    LogicEngine     _engine;
+    boolean         _searched = false;  // looked for the next solution yet
+    boolean         _found = false;     // and found it
+
+    public SolutionEnumeration( LogicEngine inEngine )
+    {
+        _engine = inEngine;
+    }
+
+    public boolean hasMoreSolutions()
+        throws Exception
+    {
+        if (!_searched) {
+            _found = _engine.findNextSolution();
+            _searched = true;
+        }
+        return _found;
+    }
+
+    //  Returns the solution as LogicEngine.getSolutionString() prints it.
+    public String nextSolution()
+        throws Exception
+    {
+        if (!hasMoreSolutions())
+            throw new NoSuchElementException("No more solutions");
+        _searched = false;
+        return _engine.getSolutionString();
+    }
+
+}       // end of class definition
@@ -0,0 +1,840 @@
+//----------------------------------------------------------------------
+//  SolveCache
+//
+//  Remembers what puzzles came to, so the same puzzle isn't solved
+//  twice.  "The same" is up to renaming and reordering: two clue sets
+//  that differ only in the names of their variables and values, the
+//  order of the clues, or which way round a clue is written (A
+//  IMMED_LEFT_OF B, B IMMED_RIGHT_OF A) are one puzzle.  The compiled
+//  clues are a graph, and a puzzle's key is a digest of that graph
+//  with its vertices numbered canonically, see CanonicalPuzzle.
+//
+//  What's kept is in canonical numbering too, so it can be handed back
+//  to a renamed copy: the answer, as the position of every value, and
+//  the cells the clues set without guessing, for prepare().  A puzzle
+//  with no solution is remembered as such.  Where a puzzle has more
+//  than one solution a renamed copy may be given a different one of
+//  them than it would have found itself, as with ExactCoverSolver.
+//
+//  The cache holds up to a number of bytes, roughly counted, and drops
+//  the least recently used puzzles to stay under it.  It can be saved
+//  to a file and loaded again.  Any thread may use it.
+//
+//  Ex:
+//    SolveCache cache = new SolveCache( 16 << 20 );
+//    String answer = cache.solve( 5, clues ).getSolutionString();
+//----------------------------------------------------------------------
+
+import java.io.*;
+import java.util.*;
+
+public class SolveCache
+{
+    static final int kFileMagic = 0x5A534331;   // "ZSC1"
+    static final int kEntryOverhead = 96;       // bytes counted for an entry besides its arrays
+
+    long        _maxBytes;
+    long        _bytes = 0;
+    Hashtable   _entries = new Hashtable();     // key -> CacheEntry
+    CacheEntry  _newest = null;                 // most recently used
+    CacheEntry  _oldest = null;
+
+    int         _hits = 0;
+    int         _misses = 0;
+    int         _evictions = 0;
+    int         _uncacheable = 0;       // too symmetric to number canonically
+
+    //----------------------------------------------------------------------
+    //  Constructor
+    //----------------------------------------------------------------------
+    public SolveCache( long inMaxBytes )
+    {
+        _maxBytes = inMaxBytes;
+    }
+
+    //----------------------------------------------------------------------
+    //  Accessors
+    //----------------------------------------------------------------------
+    public synchronized int     getHits()           { return _hits; }
+    public synchronized int     getMisses()         { return _misses; }
+    public synchronized int     getEvictions()      { return _evictions; }
+    public synchronized int     getUncacheable()    { return _uncacheable; }
+    public synchronized int     getSize()           { return _entries.size(); }
+    public synchronized long    getBytes()          { return _bytes; }
+
+    //----------------------------------------------------------------------
+    //  solve -- an engine holding the puzzle's answer, from the cache if
+    //  it's there, else by solving it, like LogicEngine.solve().  Throws
+    //  if the clues are bad or there's no solution.
+    //----------------------------------------------------------------------
+    public LogicEngine solve( int inNumValues, String inClues[] )
+        throws Exception
+    {
+        CanonicalPuzzle puzzle = new CanonicalPuzzle( inNumValues, inClues );
+        String key = puzzle.getKey();
+        CacheEntry entry;
+
+        if (key == null) {
+            synchronized (this) { _uncacheable++; }
+            LogicEngine engine = new LogicEngine( inNumValues, inClues );
+            engine.solve();
+            return engine;
+        }
+
+        synchronized (this) {
+            entry = lookup( key );
+            if ((entry != null) && (entry.solution != null))
+                _hits++;
+            else {
+                _misses++;
+                entry = null;
+            }
+        }
+        if (entry != null)
+            return puzzle.writeSolution( entry.solution );
+
+        LogicEngine engine = new LogicEngine( inNumValues, inClues );
+        try {
+            engine.solve();
+        }
+        catch (LogicFailureException ex) {
+            store( key, new int[0], null );     // no solution
+            throw ex;
+        }
+        store( key, puzzle.readSolution( engine ), null );
+        return engine;
+    }
+
+    //----------------------------------------------------------------------
+    //  prepare -- an engine taken as far as its clues go without guessing,
+    //  like LogicEngine.prepare().  On a hit the cells are written into
+    //  the compiled engine as they were, the way LogicEngine.restore()
+    //  does it, with no clue applied and nothing propagated; its trail
+    //  starts out empty, as after restore().  Since what the engine gets
+    //  to depends a little on the order of its clues, a renamed copy may
+    //  come back knowing a cell or two more than it would have worked
+    //  out for itself, never fewer.
+    //----------------------------------------------------------------------
+    public LogicEngine prepare( int inNumValues, String inClues[] )
+        throws Exception
+    {
+        CanonicalPuzzle puzzle = new CanonicalPuzzle( inNumValues, inClues );
+        String key = puzzle.getKey();
+        LogicEngine engine;
+        CacheEntry entry;
+
+        if (key == null) {
+            synchronized (this) { _uncacheable++; }
+            engine = new LogicEngine( inNumValues, inClues );
+            engine.prepare();
+            return engine;
+        }
+
+        synchronized (this) {
+            entry = lookup( key );
+            if ((entry != null) && (entry.cells != null))
+                _hits++;
+            else {
+                _misses++;
+                entry = null;
+            }
+        }
+
+        if (entry != null)
+            return puzzle.writeCells( entry.cells );
+
+        engine = new LogicEngine( inNumValues, inClues );
+        engine.prepare();
+        store( key, null, puzzle.readCells( engine ));
+        return engine;
+    }
+
+    //----------------------------------------------------------------------
+    //  lookup -- the entry for this key, now the most recently used, or
+    //  null.  Call synchronized.
+    //----------------------------------------------------------------------
+    CacheEntry lookup( String inKey )
+    {
+        CacheEntry entry = (CacheEntry) _entries.get( inKey );
+
+        if (entry != null) {
+            unlink( entry );
+            linkNewest( entry );
+        }
+        return entry;
+    }
+
+    //----------------------------------------------------------------------
+    //  store -- keep a solution or cells, or both, under this key, adding
+    //  to what's kept already.  Null leaves that part as it was.
+    //----------------------------------------------------------------------
+    synchronized void store( String inKey, int inSolution[], int inCells[] )
+    {
+        CacheEntry entry = (CacheEntry) _entries.get( inKey );
+
+        if (entry == null) {
+            entry = new CacheEntry( inKey );
+            _entries.put( inKey, entry );
+            linkNewest( entry );
+        } else {
+            _bytes -= entry.bytes;
+            unlink( entry );
+            linkNewest( entry );
+        }
+
+        if (inSolution != null)
+            entry.solution = inSolution;
+        if (inCells != null)
+            entry.cells = inCells;
+        entry.bytes = kEntryOverhead + 2 * inKey.length() +
+                      4 * ((entry.solution == null) ? 0 : entry.solution.length) +
+                      4 * ((entry.cells == null) ? 0 : entry.cells.length);
+        _bytes += entry.bytes;
+
+        while ((_bytes > _maxBytes) && (_oldest != null)) {
+            CacheEntry old = _oldest;
+            unlink( old );
+            _entries.remove( old.key );
+            _bytes -= old.bytes;
+            _evictions++;
+        }
+    }
+
+    //  the list of entries, newest first
+    void linkNewest( CacheEntry inEntry )
+    {
+        inEntry.older = _newest;
+        inEntry.newer = null;
+        if (_newest != null)
+            _newest.newer = inEntry;
+        else
+            _oldest = inEntry;
+        _newest = inEntry;
+    }
+
+    void unlink( CacheEntry inEntry )
+    {
+        if (inEntry.newer != null)
+            inEntry.newer.older = inEntry.older;
+        else
+            _newest = inEntry.older;
+        if (inEntry.older != null)
+            inEntry.older.newer = inEntry.newer;
+        else
+            _oldest = inEntry.newer;
+        inEntry.newer = inEntry.older = null;
+    }
+
+    //----------------------------------------------------------------------
+    //  save -- write every entry to a file, oldest first, so load() puts
+    //  them back in the same order.
+    //----------------------------------------------------------------------
+    public synchronized void save( String inFileName )
+        throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                                            new FileOutputStream( inFileName )));
+
+        try {
+            out.writeInt( kFileMagic );
+            out.writeInt( _entries.size() );
+            for (CacheEntry entry = _oldest; entry != null; entry = entry.newer) {
+                out.writeUTF( entry.key );
+                writeInts( out, entry.solution );
+                writeInts( out, entry.cells );
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  load -- add the entries saved in a file.  Throws if it isn't one.
+    //----------------------------------------------------------------------
+    public void load( String inFileName )
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream(
+                                            new FileInputStream( inFileName )));
+
+        try {
+            if (in.readInt() != kFileMagic)
+                throw new IOException("Not a solve cache file: " + inFileName );
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                int solution[] = readInts( in );
+                int cells[] = readInts( in );
+                store( key, solution, cells );
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    //  an array as its length, -1 for null, then its elements
+    static void writeInts( DataOutputStream inOut, int inArray[] )
+        throws IOException
+    {
+        if (inArray == null) {
+            inOut.writeInt( -1 );
+            return;
+        }
+        inOut.writeInt( inArray.length );
+        for (int i = 0; i < inArray.length; i++)
+            inOut.writeInt( inArray[i] );
+    }
+
+    static int[] readInts( DataInputStream inIn )
+        throws IOException
+    {
+        int length = inIn.readInt();
+
+        if (length < 0)
+            return null;
+        int array[] = new int[length];
+        for (int i = 0; i < length; i++)
+            array[i] = inIn.readInt();
+        return array;
+    }
+
+    //----------------------------------------------------------------------
+    //  toString -- print
+    //----------------------------------------------------------------------
+    public synchronized String toString()
+    {
+        return "cache: " + _hits + " hits, " + _misses + " misses, " + _evictions +
+               " evicted, " + _uncacheable + " uncacheable, " + _entries.size() +
+               " puzzles in " + (_bytes / 1024) + "K";
+    }
+
+}   // end of class definition
+
+
+
+
+//----------------------------------------------------------------------
+//  CacheEntry
+//
+//  What's known about one puzzle, by canonical vertex number.  The
+//  solution is each value vertex's position (-1 elsewhere), or empty
+//  if there's no solution; the cells are those set by the clues alone,
+//  packed as label << 14 | label << 2 | YES or NO.  Null if not known.
+//----------------------------------------------------------------------
+
+class CacheEntry
+{
+    String      key;
+    int         solution[] = null;
+    int         cells[] = null;
+    long        bytes = 0;
+    CacheEntry  newer, older;       // the cache's LRU list
+
+    public CacheEntry( String inKey )
+    {
+        key = inKey;
+    }
+}
+
+
+
+
+//----------------------------------------------------------------------
+//  CanonicalPuzzle
+//
+//  A puzzle's clues compiled into a graph and numbered canonically.
+//  The vertices are the variables, their values, and the positions;
+//  the edges are "has value", and each clue between two values: the
+//  same entity, NEXT_TO, IMMED_RIGHT_OF, LEFT_OF or DISTANCE n, a kind
+//  of edge for each n (IMMED_LEFT_OF and RIGHT_OF are turned round, and
+//  DISTANCE 1 is NEXT_TO).  A BETWEEN clue is about three values, so
+//  it's a vertex of its own, with an edge to its middle and one to each
+//  end.  Variables and values can be renamed, so they start out alike;
+//  positions can't, so each one is different.
+//
+//  Vertices are numbered by refining colors: a vertex's new color is
+//  its color and the colors of its neighbours, by kind of edge, until
+//  the colors stop splitting.  Where vertices are still alike, each
+//  one in turn is singled out and refined again, and the numbering
+//  that gives the smallest graph is kept, as in nauty.  Puzzles that
+//  leave a lot alike, e.g. with clues missing, can make that too slow;
+//  past kMaxLeaves numberings it gives up and there's no key.
+//----------------------------------------------------------------------
+
+class CanonicalPuzzle
+{
+    static final int kMaxLeaves = 64;
+
+    static final int kHasValue = 0;     // kinds of edge, as seen from each end
+    static final int kValueOf = 1;
+    static final int kSame = 2;
+    static final int kNextTo = 3;
+    static final int kRightOf = 4;
+    static final int kLeftOf = 5;
+    static final int kBefore = 6;       // LEFT_OF, anywhere
+    static final int kAfter = 7;
+    static final int kHasMiddle = 8;    // BETWEEN, from the clue
+    static final int kMiddleOf = 9;
+    static final int kHasEnd = 10;
+    static final int kEndOf = 11;
+    static final int kDistance = 16;    // plus the distance, 2 and up
+
+    int         _numValues;
+    LogicEngine _engine;            // with the clues compiled, not applied
+    Vector      _constraints;       // what they compiled to
+    int         _numVars;           // not counting the position variable
+    int         _positionIndex;     // the position variable's index
+    int         _numValueVertices;  // variables, values and positions, then clues
+    int         _varSlot[];         // [variable index], its place among them
+    int         _numVertices;
+    Hashtable   _edgeSet = new Hashtable();
+    Vector      _edges = new Vector();      // int[] { u, v, kind from u, kind from v }
+    int         _adjacent[][];      // [vertex], neighbours
+    int         _adjacentKind[][];  // [vertex], kind of edge to each
+    int         _initial[];         // [vertex], color before refining
+
+    int         _leaves = 0;
+    long        _best[] = null;     // smallest graph found, see certificate()
+    int         _label[] = null;    // [vertex], its number in it
+    int         _vertexOf[];        // [label], the vertex
+    String      _key = null;
+
+    //----------------------------------------------------------------------
+    //  Constructor -- compile the clues and number the graph.  Throws if
+    //  the clues are bad.
+    //----------------------------------------------------------------------
+    public CanonicalPuzzle( int inNumValues, String inClues[] )
+        throws Exception
+    {
+        _numValues = inNumValues;
+        _engine = new LogicEngine( inNumValues, inClues );
+        _engine.buildVarList( inClues );
+        _engine.initRelationMatrices();
+
+        _constraints = _engine.compileClues( inClues );
+        if (buildGraph( _constraints )) {
+            search( _initial.clone() );
+            if (_leaves <= kMaxLeaves)
+                makeKey();
+        }
+    }
+
+    //  null if the puzzle couldn't be numbered
+    public String getKey()      { return _key; }
+
+    //----------------------------------------------------------------------
+    //  buildGraph -- vertices and edges.  False if the variables don't all
+    //  have _numValues values, which the engine would choke on anyway, or
+    //  if there are too many to label.
+    //----------------------------------------------------------------------
+    boolean buildGraph( Vector inConstraints )
+    {
+        Variable varList[] = _engine.getVarList();
+        Variable positionVar = _engine.getPositionVariable();
+
+        _varSlot = new int[varList.length];
+        _positionIndex = positionVar.getIndex();
+        _numVars = 0;
+        for (int i = 0; i < varList.length; i++) {
+            if (varList[i].getValueCount() != _numValues)
+                return false;
+            if (varList[i] != positionVar)
+                _varSlot[i] = _numVars++;
+        }
+        _numValueVertices = _numVars + (_numVars + 1) * _numValues;
+
+        // a vertex for each BETWEEN clue, once however often it's given
+        Vector between = new Vector();
+        Hashtable betweenSet = new Hashtable();
+        Constraint constraint;
+        for (Enumeration e = inConstraints.elements(); e.hasMoreElements(); ) {
+            constraint = (Constraint) e.nextElement();
+            if ((constraint instanceof RelativePositionConstraint) &&
+                (((RelativePositionConstraint) constraint).getRelation() ==
+                 RelativePositionConstraint.BETWEEN)) {
+                RelativePositionConstraint clue = (RelativePositionConstraint) constraint;
+                int a = getVertex( clue.getValueA() );
+                int b = getVertex( clue.getValueB() ), c = getVertex( clue.getValueC() );
+                String key = a + " " + Math.min( b, c ) + " " + Math.max( b, c );
+                if (!betweenSet.containsKey( key )) {
+                    betweenSet.put( key, key );
+                    between.addElement( new int[] { a, b, c } );
+                }
+            }
+        }
+
+        _numVertices = _numValueVertices + between.size();
+        if (_numVertices > 4096)
+            return false;       // labels have 12 bits in CacheEntry's cells
+        _initial = new int[_numVertices];
+
+        for (int v = 0; v < _numVars; v++) {
+            _initial[v] = 0;
+            for (int i = 0; i < _numValues; i++) {
+                _initial[_numVars + v * _numValues + i] = 1;
+                addEdge( v, _numVars + v * _numValues + i, kHasValue, kValueOf );
+            }
+        }
+        for (int i = 0; i < _numValues; i++)
+            _initial[_numVars + _numVars * _numValues + i] = 2 + i;
+
+        int triple[];
+        for (int i = 0; i < between.size(); i++) {
+            triple = (int[]) between.elementAt( i );
+            _initial[_numValueVertices + i] = 2 + _numValues;
+            addEdge( _numValueVertices + i, triple[0], kHasMiddle, kMiddleOf );
+            addEdge( _numValueVertices + i, triple[1], kHasEnd, kEndOf );
+            addEdge( _numValueVertices + i, triple[2], kHasEnd, kEndOf );
+        }
+
+        for (Enumeration e = inConstraints.elements(); e.hasMoreElements(); ) {
+            constraint = (Constraint) e.nextElement();
+
+            if (constraint instanceof RelationConstraint) {
+                RelationConstraint clue = (RelationConstraint) constraint;
+                addEdge( getVertex( clue.getValueA() ), getVertex( clue.getValueB() ),
+                         kSame, kSame );
+            } else if (constraint instanceof RelativePositionConstraint) {
+                RelativePositionConstraint clue = (RelativePositionConstraint) constraint;
+                int a = getVertex( clue.getValueA() ), b = getVertex( clue.getValueB() );
+
+                switch (clue.getRelation()) {
+                case RelativePositionConstraint.NEXT_TO:
+                    addEdge( a, b, kNextTo, kNextTo );
+                    break;
+                case RelativePositionConstraint.IMMED_RIGHT_OF:
+                    addEdge( a, b, kRightOf, kLeftOf );
+                    break;
+                case RelativePositionConstraint.IMMED_LEFT_OF:
+                    addEdge( b, a, kRightOf, kLeftOf );
+                    break;
+                case RelativePositionConstraint.LEFT_OF:
+                    addEdge( a, b, kBefore, kAfter );
+                    break;
+                case RelativePositionConstraint.RIGHT_OF:
+                    addEdge( b, a, kBefore, kAfter );
+                    break;
+                case RelativePositionConstraint.DISTANCE:
+                    if (clue.getDistance() == 1)
+                        addEdge( a, b, kNextTo, kNextTo );
+                    else
+                        addEdge( a, b, kDistance + clue.getDistance(),
+                                 kDistance + clue.getDistance() );
+                    break;
+                }
+            }
+        }
+
+        // adjacency lists
+        int degree[] = new int[_numVertices];
+        int edge[];
+        for (int i = 0; i < _edges.size(); i++) {
+            edge = (int[]) _edges.elementAt( i );
+            degree[edge[0]]++;
+            degree[edge[1]]++;
+        }
+        _adjacent = new int[_numVertices][];
+        _adjacentKind = new int[_numVertices][];
+        for (int v = 0; v < _numVertices; v++) {
+            _adjacent[v] = new int[degree[v]];
+            _adjacentKind[v] = new int[degree[v]];
+            degree[v] = 0;
+        }
+        for (int i = 0; i < _edges.size(); i++) {
+            edge = (int[]) _edges.elementAt( i );
+            _adjacent[edge[0]][degree[edge[0]]] = edge[1];
+            _adjacentKind[edge[0]][degree[edge[0]]++] = edge[2];
+            _adjacent[edge[1]][degree[edge[1]]] = edge[0];
+            _adjacentKind[edge[1]][degree[edge[1]]++] = edge[3];
+        }
+        return true;
+    }
+
+    //  an edge, unless it's there already: a clue given twice is one clue
+    void addEdge( int inU, int inV, int inKindU, int inKindV )
+    {
+        if ((inKindU == inKindV) && (inU > inV)) {
+            int temp = inU; inU = inV; inV = temp;
+        }
+
+        String key = inU + " " + inV + " " + inKindU;
+        if (_edgeSet.containsKey( key ))
+            return;
+        _edgeSet.put( key, key );
+        _edges.addElement( new int[] { inU, inV, inKindU, inKindV } );
+    }
+
+    //----------------------------------------------------------------------
+    //  vertices by value, in any engine built from these clues
+    //----------------------------------------------------------------------
+    int getVertex( Value inValue )
+    {
+        int var = inValue.getVariable().getIndex();
+
+        if (var == _positionIndex)
+            return _numVars + _numVars * _numValues + inValue.getIndex();
+        return _numVars + _varSlot[var] * _numValues + inValue.getIndex();
+    }
+
+    //  the value of a vertex, null for a variable or a clue
+    Value getValue( LogicEngine inEngine, int inVertex )
+    {
+        Variable varList[] = inEngine.getVarList();
+
+        if ((inVertex < _numVars) || (inVertex >= _numValueVertices))
+            return null;
+        inVertex -= _numVars;
+        if (inVertex >= _numVars * _numValues)
+            return inEngine.getPositionVariable().getValueByIndex( inVertex - _numVars * _numValues );
+
+        for (int i = 0; i < varList.length; i++)
+            if ((i != _positionIndex) && (_varSlot[i] == inVertex / _numValues))
+                return varList[i].getValueByIndex( inVertex % _numValues );
+        return null;
+    }
+
+    //----------------------------------------------------------------------
+    //  search -- refine these colors, then if vertices are still alike,
+    //  single out each of the first class of them in turn.
+    //----------------------------------------------------------------------
+    void search( int inColors[] )
+    {
+        int numColors = refine( inColors );
+
+        if (numColors == _numVertices) {
+            _leaves++;
+            long certificate[] = certificate( inColors );
+            if ((_best == null) || (compare( certificate, _best ) < 0)) {
+                _best = certificate;
+                _label = inColors;
+            }
+            return;
+        }
+
+        // the first color that's on more than one vertex
+        int count[] = new int[_numVertices];
+        int color = 0;
+        for (int v = 0; v < _numVertices; v++)
+            count[inColors[v]]++;
+        while (count[color] < 2)
+            color++;
+
+        for (int v = 0; (v < _numVertices) && (_leaves <= kMaxLeaves); v++) {
+            if (inColors[v] != color)
+                continue;
+            int colors[] = new int[_numVertices];
+            for (int u = 0; u < _numVertices; u++)
+                colors[u] = 2 * inColors[u] + (((inColors[u] == color) && (u != v)) ? 1 : 0);
+            search( colors );
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  refine -- recolor each vertex by its color and its neighbours' until
+    //  no class splits.  Colors come out as 0, 1, ... in an order that
+    //  doesn't depend on the numbering.  Returns how many there are.
+    //----------------------------------------------------------------------
+    int refine( int ioColors[] )
+    {
+        int order[] = new int[_numVertices];
+        long signature[][] = new long[_numVertices][];
+        int numColors = -1, before;
+
+        do {
+            before = numColors;
+            for (int v = 0; v < _numVertices; v++) {
+                long sig[] = new long[_adjacent[v].length + 1];
+                for (int i = 0; i < _adjacent[v].length; i++)
+                    sig[i + 1] = ((long) _adjacentKind[v][i] << 32) | ioColors[_adjacent[v][i]];
+                Arrays.sort( sig, 1, sig.length );
+                sig[0] = ioColors[v];
+                signature[v] = sig;
+                order[v] = v;
+            }
+
+            // insertion sort by signature, stable so ties keep their order
+            for (int i = 1; i < _numVertices; i++) {
+                int v = order[i], j = i;
+                while ((j > 0) && (compare( signature[order[j - 1]], signature[v] ) > 0)) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = v;
+            }
+
+            numColors = 0;
+            for (int i = 0; i < _numVertices; i++) {
+                if ((i > 0) && (compare( signature[order[i - 1]], signature[order[i]] ) != 0))
+                    numColors++;
+                ioColors[order[i]] = numColors;
+            }
+            numColors++;
+        } while (numColors != before);
+
+        return numColors;
+    }
+
+    //----------------------------------------------------------------------
+    //  certificate -- the graph as numbered by these labels: its size,
+    //  each label's starting color, then its edges, sorted.  Two puzzles
+    //  are the same if and only if their smallest certificates are.
+    //----------------------------------------------------------------------
+    long[] certificate( int inLabel[] )
+    {
+        long cert[] = new long[2 + _numVertices + _edges.size()];
+        int edge[];
+
+        cert[0] = _numVars;
+        cert[1] = _numValues;
+        for (int v = 0; v < _numVertices; v++)
+            cert[2 + inLabel[v]] = _initial[v];
+
+        long edges[] = new long[_edges.size()];
+        for (int i = 0; i < edges.length; i++) {
+            edge = (int[]) _edges.elementAt( i );
+            int u = inLabel[edge[0]], v = inLabel[edge[1]];
+            if ((edge[2] == edge[3]) && (u > v)) {
+                int temp = u; u = v; v = temp;
+            }
+            edges[i] = ((long) u << 40) | ((long) v << 8) | edge[2];
+        }
+        Arrays.sort( edges );
+        System.arraycopy( edges, 0, cert, 2 + _numVertices, edges.length );
+        return cert;
+    }
+
+    static int compare( long inA[], long inB[] )
+    {
+        for (int i = 0; (i < inA.length) && (i < inB.length); i++)
+            if (inA[i] != inB[i])
+                return (inA[i] < inB[i]) ? -1 : 1;
+        return inA.length - inB.length;
+    }
+
+    //  makeKey -- a SHA-256 digest of the best certificate, in hex
+    void makeKey()
+        throws Exception
+    {
+        java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+        StringBuffer key = new StringBuffer();
+
+        for (int i = 0; i < _best.length; i++)
+            for (int shift = 56; shift >= 0; shift -= 8)
+                digest.update( (byte) (_best[i] >>> shift) );
+
+        byte hash[] = digest.digest();
+        for (int i = 0; i < hash.length; i++)
+            key.append( Integer.toHexString( 0x100 | (hash[i] & 0xFF) ).substring( 1 ));
+
+        _vertexOf = new int[_numVertices];
+        for (int v = 0; v < _numVertices; v++)
+            _vertexOf[_label[v]] = v;
+        _key = key.toString();
+    }
+
+    //----------------------------------------------------------------------
+    //  readSolution -- the solved engine's answer, by label: the position
+    //  of each value vertex, -1 for the others.
+    //----------------------------------------------------------------------
+    int[] readSolution( LogicEngine inEngine )
+        throws Exception
+    {
+        int solution[] = new int[_numVertices];
+        Variable positionVar = inEngine.getPositionVariable();
+        Value value, position;
+
+        for (int v = 0; v < _numVertices; v++) {
+            solution[_label[v]] = -1;
+            value = getValue( inEngine, v );
+            if ((value == null) || (value.getVariable() == positionVar))
+                continue;
+            position = value.getPositiveRelation( positionVar );
+            if (position != null)
+                solution[_label[v]] = position.getIndex();
+        }
+        return solution;
+    }
+
+    //----------------------------------------------------------------------
+    //  writeSolution -- put an answer into the compiled engine and return
+    //  it, as ExactCoverSolver does.  Throws if it says there's none.
+    //----------------------------------------------------------------------
+    LogicEngine writeSolution( int inSolution[] )
+        throws Exception
+    {
+        Variable positionVar = _engine.getPositionVariable();
+
+        if (inSolution.length == 0)
+            throw new LogicFailureException("Could not make any logically consistent guesses", 0 );
+
+        for (int label = 0; label < inSolution.length; label++)
+            if (inSolution[label] >= 0)
+                getValue( _engine, _vertexOf[label] ).setRelation(
+                                positionVar.getValueByIndex( inSolution[label] ));
+        _engine.findAnswerClue();
+        return _engine;
+    }
+
+    //----------------------------------------------------------------------
+    //  readCells -- every cell set in a prepared engine, by label
+    //----------------------------------------------------------------------
+    int[] readCells( LogicEngine inEngine )
+    {
+        RelationMatrix matrices[] = inEngine.getMatrixList();
+        Vector cells = new Vector();
+        int what;
+
+        for (int i = 0; i < matrices.length; i++) {
+            Variable varA = matrices[i].getVariableA(), varB = matrices[i].getVariableB();
+            for (int x = 0; x < matrices[i].getSize(); x++) {
+                for (int y = 0; y < matrices[i].getSize(); y++) {
+                    what = matrices[i].getCell( x, y );
+                    if (what == RelationMatrix.UNSET)
+                        continue;
+                    int a = _label[getVertex( varA.getValueByIndex( x ))];
+                    int b = _label[getVertex( varB.getValueByIndex( y ))];
+                    cells.addElement( Integer.valueOf( (a << 14) | (b << 2) | what ));
+                }
+            }
+        }
+
+        int packed[] = new int[cells.size()];
+        for (int i = 0; i < packed.length; i++)
+            packed[i] = ((Integer) cells.elementAt( i )).intValue();
+        return packed;
+    }
+
+    //----------------------------------------------------------------------
+    //  writeCells -- put cells read by readCells() into the compiled
+    //  engine and return it, prepared.  The clues are loaded but not
+    //  applied, and the cells are written as they are, set by no guess,
+    //  the way a snapshot is restored.
+    //----------------------------------------------------------------------
+    LogicEngine writeCells( int inCells[] )
+        throws Exception
+    {
+        _engine.load( _constraints );
+        for (int i = 0; i < inCells.length; i++)
+            writeCell( _engine, inCells[i] );
+
+        _engine.restore( _engine.snapshot() );  // the rest of the engine to match
+        return _engine;
+    }
+
+    void writeCell( LogicEngine inEngine, int inCell )
+        throws Exception
+    {
+        Value a = getValue( inEngine, _vertexOf[inCell >>> 14] );
+        Value b = getValue( inEngine, _vertexOf[(inCell >>> 2) & 0xFFF] );
+        RelationMatrix matrix = inEngine.getMatrix( a.getVariable().getIndex(),
+                                                    b.getVariable().getIndex() );
+
+        if (matrix.getVariableA() == a.getVariable())
+            matrix.markCell( a.getIndex(), b.getIndex(), inCell & 0x3 );
+        else
+            matrix.markCell( b.getIndex(), a.getIndex(), inCell & 0x3 );
+    }
+}
@@ -0,0 +1,323 @@
+//----------------------------------------------------------------------
+//  SolverContext
+//
+//  State shared by all the RelationMatrices of one LogicEngine: the
+//  undo trail of cells set, the clues waiting to be reapplied and
+//  anyone listening in.  Each engine owns its own context so engines
+//  can run side by side.
+//
+//  The trail is a plain int array, one entry per cell set, packed as
+//  matrix id << 14 | x << 8 | y << 2 | value, so setting a cell doesn't
+//  allocate or lock anything.  mark() and rewind() take the place of
+//  SetCommands to undo back to.  An entry with a value of 3 is no cell
+//  but a change to the EntityClasses, if the engine keeps them.
+//
+//  The cells themselves, every matrix's words and reasons, are kept
+//  here too, in one long array, the cell image.  Since that's all the
+//  state the matrices have, snapshot() is a copy of it and restore()
+//  copies one back in a single System.arraycopy, instead of undoing or
+//  replaying cells one at a time.  An image can be written out and
+//  read back in with writeImage() and readImage().
+//----------------------------------------------------------------------
+
+import java.io.*;
+
+public class SolverContext
+{
+    int         _trail[];           // cells set, oldest first, see pack()
+    int         _trailSize = 0;
+    RelationMatrix  _matrices[];    // every matrix, by id
+    int         _numMatrices = 0;
+    long        _cells[];           // the cell image, see allocateCells()
+    int         _cellsSize = 0;
+    PropagationQueue    _queue = null;  // clues to reapply when cells change
+    SolverListener  _listener = null;   // null when nobody's listening
+    EntityClasses   _classes = null;    // null if the matrices find transitive relations
+    NogoodStore     _nogoods = null;    // null unless learning, reads the trail
+    SolverStatistics    _stats;         // the matrices count their work here
+    long        _reason = 0;        // guess levels read since clearReason()
+
+    //----------------------------------------------------------------------
+    //  Constructor
+    //----------------------------------------------------------------------
+    public SolverContext()
+    {
+        _trail = new int[256];
+        _matrices = new RelationMatrix[16];
+        _cells = new long[1024];
+        _stats = new SolverStatistics();
+    }
+
+    //----------------------------------------------------------------------
+    //  Accessors
+    //----------------------------------------------------------------------
+    public void setPropagationQueue( PropagationQueue inQueue )    { _queue = inQueue; }
+    public void setEntityClasses( EntityClasses inClasses )    { _classes = inClasses; }
+    public void setNogoodStore( NogoodStore inNogoods )         { _nogoods = inNogoods; }
+    public void setStatistics( SolverStatistics inStats )       { _stats = inStats; }
+    public RelationMatrix getMatrix( int inID ) { return _matrices[inID]; }
+    public int getMatrixCount()                 { return _numMatrices; }
+
+    //----------------------------------------------------------------------
+    //  clearReason, getReason -- every cell read through getRelation,
+    //  getPositiveRelation or getPossible adds the guess levels it depends
+    //  on to the reason, and cells set through setRelation or
+    //  setNoRelation depend on the reason so far.  Clear it before each
+    //  step of reasoning.
+    //----------------------------------------------------------------------
+    public void clearReason()                   { _reason = 0; }
+    public long getReason()                     { return _reason; }
+
+    //----------------------------------------------------------------------
+    //  levelBit, highestLevel -- reasons are sets of guess levels, one bit
+    //  per level starting at 1.  Levels past 62 share the top bit, which
+    //  stands for all of the levels so far.
+    //----------------------------------------------------------------------
+    static final int kDeepLevel = 63;
+
+    public static long levelBit( int inLevel )
+    {
+        return 1L << Math.min( inLevel, kDeepLevel );
+    }
+
+    //  Every guess from level 1 to inLevel, e.g. all the guesses that led
+    //  to a solution.
+    public static long levelsUpTo( int inLevel )
+    {
+        if (inLevel >= kDeepLevel)
+            return -1L;
+        return (1L << (inLevel + 1)) - 2;
+    }
+
+    //  Returns 0 if the reason holds no guesses, kDeepLevel if it's deep.
+    public static int highestLevel( long inReason )
+    {
+        return 63 - Long.numberOfLeadingZeros( inReason | 1 );
+    }
+
+    //----------------------------------------------------------------------
+    //  registerMatrix -- give a new matrix its id
+    //----------------------------------------------------------------------
+    int registerMatrix( RelationMatrix inMatrix )
+    {
+        if (_numMatrices == _matrices.length) {
+            RelationMatrix matrices[] = new RelationMatrix[_numMatrices * 2];
+            System.arraycopy( _matrices, 0, matrices, 0, _numMatrices );
+            _matrices = matrices;
+        }
+        _matrices[_numMatrices] = inMatrix;
+        return _numMatrices++;
+    }
+
+    //----------------------------------------------------------------------
+    //  allocateCells -- room in the cell image for the matrix registered
+    //  last.  Returns the offset of its first long.  Every matrix holds the
+    //  image itself, so when it grows they're all handed the new one.
+    //----------------------------------------------------------------------
+    int allocateCells( int inLongs )
+    {
+        int offset = _cellsSize;
+
+        if (_cellsSize + inLongs > _cells.length) {
+            long cells[] = new long[Math.max( _cells.length * 2, _cellsSize + inLongs )];
+            System.arraycopy( _cells, 0, cells, 0, _cellsSize );
+            _cells = cells;
+        }
+        _cellsSize += inLongs;
+        for (int i = 0; i < _numMatrices; i++)
+            _matrices[i]._cells = _cells;
+        return offset;
+    }
+
+    //----------------------------------------------------------------------
+    //  add/removeSolverListener
+    //----------------------------------------------------------------------
+    public synchronized void addSolverListener( SolverListener inListener )
+    {
+        _listener = SolverEventMulticaster.add( _listener, inListener );
+    }
+
+    public synchronized void removeSolverListener( SolverListener inListener )
+    {
+        _listener = SolverEventMulticaster.remove( _listener, inListener );
+    }
+
+    //----------------------------------------------------------------------
+    //  recordSet, recordUnset -- a matrix cell was just set or unset,
+    //  remember it for undo and tell anyone listening.
+    //----------------------------------------------------------------------
+    void recordSet( RelationMatrix inMatrix, int x, int y, int inWhat )
+    {
+        if (_trailSize == _trail.length) {
+            int trail[] = new int[_trailSize * 2];
+            System.arraycopy( _trail, 0, trail, 0, _trailSize );
+            _trail = trail;
+        }
+        _trail[_trailSize++] = pack( inMatrix.getID(), x, y, inWhat );
+
+        if (_queue != null)
+            _queue.cellChanged( inMatrix, x, y );
+        if (_listener != null)
+            _listener.cellSet( inMatrix, x, y, inWhat );
+    }
+
+    //  The EntityClasses changed, and have logged how to undo it.
+    static final int kClassChange = 3;
+
+    void recordClassChange()
+    {
+        if (_trailSize == _trail.length) {
+            int trail[] = new int[_trailSize * 2];
+            System.arraycopy( _trail, 0, trail, 0, _trailSize );
+            _trail = trail;
+        }
+        _trail[_trailSize++] = kClassChange;
+    }
+
+    void recordUnset( RelationMatrix inMatrix, int x, int y )
+    {
+        if (_listener != null)
+            _listener.cellUnset( inMatrix, x, y );
+    }
+
+    //----------------------------------------------------------------------
+    //  pack -- one trail entry.  x and y are under 64 and the value is
+    //  YES or NO, which leaves 18 bits for the matrix id.
+    //----------------------------------------------------------------------
+    static int pack( int inID, int x, int y, int inWhat )
+    {
+        return (inID << 14) | (x << 8) | (y << 2) | inWhat;
+    }
+
+    //----------------------------------------------------------------------
+    //  fireGuessPushed, fireGuessPopped -- the engine made a guess, or
+    //  gave up on one.
+    //----------------------------------------------------------------------
+    void fireGuessPushed( int inDepth )
+    {
+        if (_listener != null)
+            _listener.guessPushed( inDepth );
+    }
+
+    void fireGuessPopped( int inDepth )
+    {
+        if (_listener != null)
+            _listener.guessPopped( inDepth );
+    }
+
+    //----------------------------------------------------------------------
+    //  mark -- where the trail is now, to rewind back to later.
+    //----------------------------------------------------------------------
+    public int mark()       { return _trailSize; }
+
+    //----------------------------------------------------------------------
+    //  snapshot -- a copy of the cell image, every cell of every matrix
+    //  and the guess levels each depends on.  Take it where propagation is
+    //  done, as with mark().
+    //----------------------------------------------------------------------
+    public long[] snapshot()
+    {
+        long image[] = new long[_cellsSize];
+
+        System.arraycopy( _cells, 0, image, 0, _cellsSize );
+        return image;
+    }
+
+    //----------------------------------------------------------------------
+    //  restore -- put back a snapshot taken from this context, or one with
+    //  the same matrices, e.g. another engine's built from the same clues.
+    //  The trail starts over empty, so there's no rewinding to a mark from
+    //  before.  What the EntityClasses know is worked out again from the
+    //  cells, and the nogood store reads the trail from the start.
+    //  Anyone listening hears of each cell that changed.
+    //----------------------------------------------------------------------
+    public void restore( long inImage[] )
+        throws Exception
+    {
+        if (inImage.length != _cellsSize)
+            throw new Exception("Snapshot has " + inImage.length + " cells, not " + _cellsSize );
+
+        long old[] = (_listener != null) ? snapshot() : null;
+
+        if (_queue != null)
+            _queue.clear();
+        System.arraycopy( inImage, 0, _cells, 0, _cellsSize );
+        if (_classes != null)
+            _classes.rebuild();
+        _trailSize = 0;
+        if (_nogoods != null)
+            _nogoods.rewind( 0 );
+
+        if (old != null)
+            for (int i = 0; i < _numMatrices; i++)
+                _matrices[i].fireRestored( old );
+    }
+
+    //----------------------------------------------------------------------
+    //  writeImage, readImage -- a snapshot as bytes, to keep.  A magic
+    //  number and the length, then each long.  An image is read back for
+    //  a context with its matrices made, e.g. a started engine's, and
+    //  must be the size of its own; anything else is refused before any
+    //  of it is read.
+    //
+    //  Ex:
+    //    SolverContext.writeImage( engine.snapshot(), out );
+    //    ...
+    //    engine.restore( engine.getContext().readImage( in ));
+    //----------------------------------------------------------------------
+    static final int kImageMagic = 0x5A534931;      // "ZSI1"
+
+    public static void writeImage( long inImage[], OutputStream inStream )
+        throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( inStream ));
+
+        out.writeInt( kImageMagic );
+        out.writeInt( inImage.length );
+        for (int i = 0; i < inImage.length; i++)
+            out.writeLong( inImage[i] );
+        out.flush();
+    }
+
+    public long[] readImage( InputStream inStream )
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( inStream ));
+
+        if (in.readInt() != kImageMagic)
+            throw new IOException("Not a snapshot");
+
+        int length = in.readInt();
+        if (length != _cellsSize)
+            throw new IOException("Snapshot has " + length + " cells, not " + _cellsSize );
+
+        long image[] = new long[length];
+        for (int i = 0; i < image.length; i++)
+            image[i] = in.readLong();
+        return image;
+    }
+
+    //----------------------------------------------------------------------
+    //  rewind -- unset every cell set since the mark, latest first.
+    //  Anything queued for propagation is dropped: marks are only taken
+    //  once propagation is done.
+    //----------------------------------------------------------------------
+    public void rewind( int inMark )
+    {
+        int entry;
+
+        if (_queue != null)
+            _queue.clear();
+        if (_nogoods != null)
+            _nogoods.rewind( inMark );
+
+        while (_trailSize > inMark) {
+            entry = _trail[--_trailSize];
+            if ((entry & 0x3) == kClassChange)
+                _classes.undo();
+            else
+                _matrices[entry >>> 14].unset( (entry >>> 8) & 0x3F, (entry >>> 2) & 0x3F );
+        }
+    }
+
+}   // end of class definition
@@ -0,0 +1,139 @@
+//----------------------------------------------------------------------
+//  SolverEventRecorder
+//
+//  Records solver events into a fixed size ring buffer with no locks,
+//  each event packed into a single long.  The engine thread writes, one
+//  other thread may drain.  If the reader falls more than a ring's
+//  worth behind, the oldest events are dropped and counted as lost.
+//
+//  Ex:
+//    SolverEventRecorder rec = new SolverEventRecorder( 4096 );
+//    engine.addSolverListener( rec );
+//    ...
+//    long events[] = new long[256];
+//    for (int n; (n = rec.drain( events )) > 0 ; )
+//        for (int i = 0; i < n; i++)
+//            if (SolverEventRecorder.getType( events[i] ) == SolverEventRecorder.CELL_SET) ...
+//----------------------------------------------------------------------
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SolverEventRecorder implements SolverListener
+{
+    static final int CELL_SET = 1;
+    static final int CELL_UNSET = 2;
+    static final int GUESS_PUSHED = 3;
+    static final int GUESS_POPPED = 4;
+
+    long        _ring[];
+    int         _mask;
+    AtomicLong  _written;       // count of events ever recorded, set by writer
+    long        _read;          // count of events drained, reader only
+    long        _lost;          // events overwritten before being drained
+
+    //----------------------------------------------------------------------
+    //  Constructor -- capacity is rounded up to a power of two
+    //----------------------------------------------------------------------
+    public SolverEventRecorder( int inCapacity )
+    {
+        int capacity = 1;
+        while (capacity < inCapacity)
+            capacity <<= 1;
+
+        _ring = new long[capacity];
+        _mask = capacity - 1;
+        _written = new AtomicLong( 0 );
+    }
+
+    //----------------------------------------------------------------------
+    //  Accessors
+    //----------------------------------------------------------------------
+    public int  getCapacity()       { return _ring.length; }
+    public long getWrittenCount()   { return _written.get(); }
+    public long getLostCount()      { return _lost; }
+
+    //----------------------------------------------------------------------
+    //  SolverListener -- pack and record
+    //----------------------------------------------------------------------
+    public void cellSet( RelationMatrix inMatrix, int x, int y, int inWhat )
+    {
+        record( pack( CELL_SET, inMatrix.getID(), x, y, inWhat ));
+    }
+
+    public void cellUnset( RelationMatrix inMatrix, int x, int y )
+    {
+        record( pack( CELL_UNSET, inMatrix.getID(), x, y, RelationMatrix.UNSET ));
+    }
+
+    public void guessPushed( int inDepth )
+    {
+        record( ((long) GUESS_PUSHED << 56) | inDepth );
+    }
+
+    public void guessPopped( int inDepth )
+    {
+        record( ((long) GUESS_POPPED << 56) | inDepth );
+    }
+
+    //----------------------------------------------------------------------
+    //  record -- write the slot, then publish it by bumping the count
+    //----------------------------------------------------------------------
+    void record( long inEvent )
+    {
+        long n = _written.get();
+        _ring[(int) n & _mask] = inEvent;
+        _written.lazySet( n + 1 );
+    }
+
+    //----------------------------------------------------------------------
+    //  drain -- copy as many unread events as fit into outEvents, oldest
+    //  first.  Returns the number copied, zero when caught up.
+    //----------------------------------------------------------------------
+    public int drain( long outEvents[] )
+    {
+        // the slot after the newest may be mid-write, so only trust
+        // capacity-1 events back from the end
+        long end = _written.get();
+        long oldest = end + 1 - _ring.length;
+        if (_read < oldest) {                   // writer lapped us
+            _lost += oldest - _read;
+            _read = oldest;
+        }
+
+        int n = (int) Math.min( end - _read, outEvents.length );
+        for (int i = 0; i < n; i++)
+            outEvents[i] = _ring[(int) (_read + i) & _mask];
+
+        // anything the writer overwrote while we copied is no good
+        long overwritten = _written.get() + 1 - _ring.length - _read;
+        if (overwritten > 0) {
+            if (overwritten > n)
+                overwritten = n;
+            System.arraycopy( outEvents, (int) overwritten, outEvents, 0, n - (int) overwritten );
+            n -= (int) overwritten;
+            _lost += overwritten;
+            _read += overwritten;
+        }
+
+        _read += n;
+        return n;
+    }
+
+    //----------------------------------------------------------------------
+    //  packing -- type:8 | matrix id:24 | x:8 | y:8 | what:8, guess events
+    //  carry the guess depth in the low 32 bits instead.
+    //----------------------------------------------------------------------
+    static long pack( int inType, int inMatrixID, int x, int y, int inWhat )
+    {
+        return ((long) inType << 56) | ((long) inMatrixID << 32) |
+                (x << 16) | (y << 8) | inWhat;
+    }
+
+    public static int getType( long inEvent )       { return (int) (inEvent >>> 56); }
+    public static int getMatrixID( long inEvent )   { return (int) (inEvent >>> 32) & 0xFFFFFF; }
+    public static int getX( long inEvent )          { return (int) (inEvent >>> 16) & 0xFF; }
+    public static int getY( long inEvent )          { return (int) (inEvent >>> 8) & 0xFF; }
+    public static int getWhat( long inEvent )       { return (int) inEvent & 0xFF; }
+    public static int getDepth( long inEvent )      { return (int) inEvent; }
+
+}   // end of class definition
@@ -0,0 +1,82 @@
+//----------------------------------------------------------------------
+//  SolverListener
+//
+//  Told about every change a LogicEngine makes as it works: matrix
+//  cells being set and unset, and guesses being made and given up.
+//  Called on the engine's thread, so listeners should be quick and
+//  must never block it.  See SolverViewAdapter and SolverEventRecorder.
+//----------------------------------------------------------------------
+
+public interface SolverListener
+{
+    public void cellSet( RelationMatrix inMatrix, int x, int y, int inWhat );
+    public void cellUnset( RelationMatrix inMatrix, int x, int y );
+    public void guessPushed( int inDepth );
+    public void guessPopped( int inDepth );
+}
+
+
+//----------------------------------------------------------------------
+//  SolverEventMulticaster
+//
+//  Chains two listeners together so a context only ever holds one.
+//  Works like java.awt.AWTEventMulticaster.
+//----------------------------------------------------------------------
+
+class SolverEventMulticaster implements SolverListener
+{
+    SolverListener  _a, _b;
+
+    SolverEventMulticaster( SolverListener inA, SolverListener inB )
+    {
+        _a = inA;
+        _b = inB;
+    }
+
+    //----------------------------------------------------------------------
+    //  add, remove -- return the listener chain with inB added or removed
+    //----------------------------------------------------------------------
+    public static SolverListener add( SolverListener inA, SolverListener inB )
+    {
+        if (inA == null)
+            return inB;
+        if (inB == null)
+            return inA;
+        return new SolverEventMulticaster( inA, inB );
+    }
+
+    public static SolverListener remove( SolverListener inList, SolverListener inB )
+    {
+        if ((inList == inB) || (inList == null))
+            return null;
+        if (inList instanceof SolverEventMulticaster) {
+            SolverEventMulticaster m = (SolverEventMulticaster) inList;
+            return add( remove( m._a, inB ), remove( m._b, inB ));
+        }
+        return inList;
+    }
+
+    public void cellSet( RelationMatrix inMatrix, int x, int y, int inWhat )
+    {
+        _a.cellSet( inMatrix, x, y, inWhat );
+        _b.cellSet( inMatrix, x, y, inWhat );
+    }
+
+    public void cellUnset( RelationMatrix inMatrix, int x, int y )
+    {
+        _a.cellUnset( inMatrix, x, y );
+        _b.cellUnset( inMatrix, x, y );
+    }
+
+    public void guessPushed( int inDepth )
+    {
+        _a.guessPushed( inDepth );
+        _b.guessPushed( inDepth );
+    }
+
+    public void guessPopped( int inDepth )
+    {
+        _a.guessPopped( inDepth );
+        _b.guessPopped( inDepth );
+    }
+}
@@ -0,0 +1,129 @@
+//----------------------------------------------------------------------
+//  SolverStatistics
+//
+//  Counts of the work one LogicEngine did on its last solve.  Guesses
+//  are what dominate solve time, so they're counted separately from
+//  the guesses that had to be taken back.  With clause learning on,
+//  each failure a guess ran into is a conflict, and may teach the
+//  engine a nogood.
+//
+//  Below the guesses, the matrices count the cells they set and what
+//  set them, and the engine keeps the wall time of each phase of a
+//  solve: building the variables, making the matrices, propagating
+//  the clues, and searching, not counting the propagation done while
+//  searching.  Everything is a plain field bumped by whoever does the
+//  work, so counting costs next to nothing.  One engine, one thread.
+//----------------------------------------------------------------------
+
+public class SolverStatistics
+{
+    static final int kBuild = 0;
+    static final int kInit = 1;
+    static final int kPropagate = 2;
+    static final int kSearch = 3;
+    static final String kPhaseNames[] = { "build", "init", "propagate", "search" };
+
+    int     _guesses = 0;       // guesses made, including retries
+    int     _backtracks = 0;    // guesses undone
+    int     _backjumps = 0;     // guesses skipped over by backjumping
+    int     _maxDepth = 0;      // most guesses in force at once
+    int     _conflicts = 0;     // failures backed up from
+    int     _learned = 0;       // nogoods learned from them
+    int     _nogoodsFired = 0;  // cells set NO by learned nogoods
+    long    _cellSets = 0;      // matrix cells set, YES or NO
+    long    _transitive = 0;    // YES's carried over to the other matrices
+    long    _eliminations = 0;  // YES's found as the last cell left in a line
+    long    _reapplications = 0;    // relative clues reapplied
+    long    _phaseTime[] = new long[4];     // nanoseconds, by phase
+
+    //----------------------------------------------------------------------
+    //  Accessors
+    //----------------------------------------------------------------------
+    public int  getGuesses()        { return _guesses; }
+    public int  getBacktracks()     { return _backtracks; }
+    public int  getBackjumps()      { return _backjumps; }
+    public int  getMaxDepth()       { return _maxDepth; }
+    public int  getConflicts()      { return _conflicts; }
+    public int  getLearnedNogoods() { return _learned; }
+    public int  getNogoodsFired()   { return _nogoodsFired; }
+    public long getCellSets()       { return _cellSets; }
+    public long getTransitivePropagations() { return _transitive; }
+    public long getEliminations()   { return _eliminations; }
+    public long getReapplications() { return _reapplications; }
+
+    //  in milliseconds
+    public long getBuildTime()      { return _phaseTime[kBuild] / 1000000; }
+    public long getInitTime()       { return _phaseTime[kInit] / 1000000; }
+    public long getPropagateTime()  { return _phaseTime[kPropagate] / 1000000; }
+    public long getSearchTime()     { return _phaseTime[kSearch] / 1000000; }
+
+    //----------------------------------------------------------------------
+    //  endPhase -- a phase that started at inStart (System.nanoTime())
+    //  just ended.  Returns the time now, to start the next one.
+    //----------------------------------------------------------------------
+    long endPhase( int inPhase, long inStart )
+    {
+        long now = System.nanoTime();
+        _phaseTime[inPhase] += now - inStart;
+        return now;
+    }
+
+    public void reset()
+    {
+        _guesses = 0;
+        _backtracks = 0;
+        _backjumps = 0;
+        _maxDepth = 0;
+        _conflicts = 0;
+        _learned = 0;
+        _nogoodsFired = 0;
+        _cellSets = 0;
+        _transitive = 0;
+        _eliminations = 0;
+        _reapplications = 0;
+        for (int i = 0; i < _phaseTime.length; i++)
+            _phaseTime[i] = 0;
+    }
+
+    //----------------------------------------------------------------------
+    //  add -- add another engine's counts to these, e.g. for the totals of
+    //  a batch.  The depth is the deepest of the two.
+    //----------------------------------------------------------------------
+    public void add( SolverStatistics inOther )
+    {
+        _guesses += inOther._guesses;
+        _backtracks += inOther._backtracks;
+        _backjumps += inOther._backjumps;
+        _maxDepth = Math.max( _maxDepth, inOther._maxDepth );
+        _conflicts += inOther._conflicts;
+        _learned += inOther._learned;
+        _nogoodsFired += inOther._nogoodsFired;
+        _cellSets += inOther._cellSets;
+        _transitive += inOther._transitive;
+        _eliminations += inOther._eliminations;
+        _reapplications += inOther._reapplications;
+        for (int i = 0; i < _phaseTime.length; i++)
+            _phaseTime[i] += inOther._phaseTime[i];
+    }
+
+    //----------------------------------------------------------------------
+    //  toString -- print
+    //----------------------------------------------------------------------
+    public String toString()
+    {
+        StringBuffer buf = new StringBuffer();
+
+        buf.append("guesses: " + _guesses + "  backtracks: " + _backtracks +
+                   "  backjumps: " + _backjumps + "  max depth: " + _maxDepth +
+                   "  conflicts: " + _conflicts + "  learned: " + _learned +
+                   "  fired: " + _nogoodsFired );
+        buf.append("\ncell sets: " + _cellSets + "  transitive: " + _transitive +
+                   "  eliminations: " + _eliminations + "  reapplications: " +
+                   _reapplications );
+        buf.append("\nms:");
+        for (int i = 0; i < _phaseTime.length; i++)
+            buf.append("  " + kPhaseNames[i] + " " + (_phaseTime[i] / 1000000));
+        return buf.toString();
+    }
+
+}   // end of class definition
@@ -0,0 +1,191 @@
+//----------------------------------------------------------------------
+//  SolverViewAdapter
+//
+//  Feeds solver events to the AWT view without ever stopping the engine.
+//  The engine thread collects events into batches and hands each batch
+//  over in one go.  The view keeps its own copy of the matrices and
+//  replays the events into it, one per step() while stepping, or all at
+//  once otherwise, so "Next" walks through the logic after the fact.
+//----------------------------------------------------------------------
+
+import java.awt.*;
+import java.util.*;
+
+public class SolverViewAdapter implements SolverListener
+{
+    static final int kBatchSize = 64;
+
+    LogicEngine _engine;
+    Component   _view;          // repainted when a batch arrives and we're not stepping
+
+    Vector      _batch;         // engine thread only: events not yet handed over
+    Vector      _pending;       // handed over, not yet shown.  Guarded by this.
+
+    Vector      _cells;         // view thread only: int[] of cells per matrix id
+    Value       _recentA = null, _recentB = null;
+    int         _clueID = 0;
+    boolean     _stepping = true;
+
+    //----------------------------------------------------------------------
+    //  Constructor
+    //----------------------------------------------------------------------
+    public SolverViewAdapter( LogicEngine inEngine, Component inView )
+    {
+        _engine = inEngine;
+        _view = inView;
+        _batch = new Vector( kBatchSize );
+        _pending = new Vector();
+        _cells = new Vector();
+    }
+
+    //----------------------------------------------------------------------
+    //  Accessors (view side)
+    //----------------------------------------------------------------------
+    public Value    getMostRecentValueA()   { return _recentA; }
+    public Value    getMostRecentValueB()   { return _recentB; }
+    public int      getClueID()             { return _clueID; }
+    public synchronized boolean hasPending()    { return !_pending.isEmpty(); }
+    public synchronized void setStepping( boolean inFlag )  { _stepping = inFlag; }
+
+    //----------------------------------------------------------------------
+    //  SolverListener -- engine thread.  Never blocks for long.
+    //----------------------------------------------------------------------
+    public void cellSet( RelationMatrix inMatrix, int x, int y, int inWhat )
+    {
+        _batch.addElement( new ViewEvent( inMatrix, x, y, inWhat, _engine.getClueID() ));
+        if (_batch.size() >= kBatchSize)
+            publish();
+    }
+
+    public void cellUnset( RelationMatrix inMatrix, int x, int y )
+    {
+        _batch.addElement( new ViewEvent( inMatrix, x, y, RelationMatrix.UNSET,
+                                          _engine.getClueID() ));
+        if (_batch.size() >= kBatchSize)
+            publish();
+    }
+
+    public void guessPushed( int inDepth )  { publish(); }
+    public void guessPopped( int inDepth )  { publish(); }
+
+    //----------------------------------------------------------------------
+    //  publish -- hand the current batch over to the view
+    //----------------------------------------------------------------------
+    void publish()
+    {
+        boolean stepping;
+
+        synchronized (this) {
+            for (Enumeration e = _batch.elements() ; e.hasMoreElements() ; )
+                _pending.addElement( e.nextElement() );
+            stepping = _stepping;
+        }
+        _batch.removeAllElements();
+
+        if (!stepping)
+            _view.repaint();
+    }
+
+    //----------------------------------------------------------------------
+    //  finish -- the engine thread is done, take whatever it had left.
+    //  Only call once the engine thread has died.
+    //----------------------------------------------------------------------
+    public void finish()
+    {
+        if (!_batch.isEmpty())
+            publish();
+    }
+
+    //----------------------------------------------------------------------
+    //  step -- show the next event, or all of them if not stepping.
+    //  Returns false if there was nothing to show.
+    //----------------------------------------------------------------------
+    public boolean step()
+    {
+        ViewEvent event;
+        boolean shown = false;
+
+        do {
+            synchronized (this) {
+                if (_pending.isEmpty())
+                    return shown;
+                event = (ViewEvent) _pending.elementAt( 0 );
+                _pending.removeElementAt( 0 );
+            }
+            show( event );
+            shown = true;
+        } while (!_stepping);
+
+        return shown;
+    }
+
+    //----------------------------------------------------------------------
+    //  show -- replay one event into the view's copy of the matrices
+    //----------------------------------------------------------------------
+    void show( ViewEvent inEvent )
+    {
+        RelationMatrix mat = inEvent.matrix;
+        int size = mat.getVariableA().getValueCount();
+
+        getCells( mat )[inEvent.x * size + inEvent.y] = inEvent.what;
+        _recentA = mat.getVariableA().getValueByIndex( inEvent.x );
+        _recentB = mat.getVariableB().getValueByIndex( inEvent.y );
+        _clueID = inEvent.clueID;
+    }
+
+    int[] getCells( RelationMatrix inMatrix )
+    {
+        int id = inMatrix.getID();
+        int size = inMatrix.getVariableA().getValueCount();
+
+        if (_cells.size() <= id)
+            _cells.setSize( id + 1 );
+        if (_cells.elementAt( id ) == null)
+            _cells.setElementAt( new int[size * size], id );
+        return (int[]) _cells.elementAt( id );
+    }
+
+    //----------------------------------------------------------------------
+    //  getRelation -- the relation between two values as far as the view
+    //  has been shown.
+    //  Throws if no matrix for these variables.
+    //----------------------------------------------------------------------
+    public int getRelation( Value inValueA, Value inValueB )
+        throws Exception
+    {
+        if (inValueA == inValueB)
+            return RelationMatrix.YES;
+        if (inValueA.getVariable() == inValueB.getVariable())
+            return RelationMatrix.NO;
+
+        RelationMatrix mat = inValueA.getVariable().getMatrixForVariable( inValueB.getVariable() );
+        int i = inValueA.getIndex();
+        int j = inValueB.getIndex();
+
+        if (mat.getVariableA() != inValueA.getVariable()) {
+            int temp = i; i = j; j = temp;      // swap indices
+        }
+        return getCells( mat )[i * mat.getVariableA().getValueCount() + j];
+    }
+
+}   // end of class definition
+
+
+//----------------------------------------------------------------------
+//  ViewEvent -- one cell change as seen by the view
+//----------------------------------------------------------------------
+
+class ViewEvent
+{
+    RelationMatrix  matrix;
+    int             x, y, what, clueID;
+
+    public ViewEvent( RelationMatrix inMatrix, int inX, int inY, int inWhat, int inClueID )
+    {
+        matrix = inMatrix;
+        x = inX;
+        y = inY;
+        what = inWhat;
+        clueID = inClueID;
+    }
+}
@@ -14,8 +14,11 @@ import RelationMatrix;
 public class Variable
 {
     String  _name;          // unique string defining variable
+    int     _index;         // which of the engine's variables this is
     Vector  _valueList;     // values of this varaible
+    Hashtable _valueTable;  // values by name
     Vector  _matrixList;    // relation matrices between this variables and others
+    RelationMatrix _matrixRow[];    // the same, by the other variable's index
 
     //----------------------------------------------------------------------
     //  Constructor
@@ -24,18 +27,23 @@ public class Variable
     {
         _name = new String( inName );
         _valueList = new Vector();
+        _valueTable = new Hashtable();
         _matrixList = new Vector(); // should be a Set
+        _matrixRow = new RelationMatrix[0];
     }
 
     //----------------------------------------------------------------------
     //  Accessors
     //----------------------------------------------------------------------
     public String   getName()           { return _name; }
+    public int      getIndex()          { return _index; }
     public int      getValueCount()     { return _valueList.size(); }
     public Vector   getValueVector()    { return _valueList; }
     public Vector   getMatrixVector()   { return _matrixList; }
     public ValueEnumeration elements()  { return new ValueEnumeration( this ); }
 
+    public void     setIndex( int inIndex )     { _index = inIndex; }
+
     //----------------------------------------------------------------------
     //  getValueBy* -- retrieve one of variables values
     //----------------------------------------------------------------------
@@ -47,12 +55,9 @@ public class Variable
     public Value getValueByName( String inName )
         throws Exception
     {
-        Value val;
-        for (ValueEnumeration e = elements() ; e.hasMoreValues() ; ) {
-            val = e.nextValue();
-            if (val.getName().equals( inName ))
-                return val;
-        }
+        Value val = (Value) _valueTable.get( inName );
+        if (val != null)
+            return val;
 
         throw new Exception("Variable '" + _name + "' has no value '" + inName
                             + "'");
@@ -65,36 +70,49 @@ public class Variable
     {
         inValue.setIndex( _valueList.size() );
         _valueList.addElement( inValue );
+        if (!_valueTable.containsKey( inValue.getName() ))
+            _valueTable.put( inValue.getName(), inValue );
     }
-    public void     addValueByName( String inValueName )
+    public Value    addValueByName( String inValueName )
     {
         Value value = new Value( inValueName, this, _valueList.size() );
-        _valueList.addElement( value );
+        addValue( value );
+        return value;
     }
 
+    //----------------------------------------------------------------------
+    //  addMatrix -- a matrix relating us to another variable.  The other
+    //  variable must already have its index.
     //----------------------------------------------------------------------
     public void     addMatrix( RelationMatrix inMatrix )
     {
+        Variable other = (inMatrix.getVariableA() == this) ? inMatrix.getVariableB()
+                                                           : inMatrix.getVariableA();
         _matrixList.addElement( inMatrix );
+
+        if (other._index >= _matrixRow.length) {
+            RelationMatrix row[] = new RelationMatrix[other._index + 1];
+            System.arraycopy( _matrixRow, 0, row, 0, _matrixRow.length );
+            _matrixRow = row;
+        }
+        _matrixRow[other._index] = inMatrix;
     }
 
     //----------------------------------------------------------------------
     //  getMatrixForVariable -- find Relation Matrix for both this Variable
-    //  and the input Variable.
+    //  and the input Variable.  Looked up by the other variable's index.
     //
     //  Throws if variables identical, or no matrix for some other reason
     //----------------------------------------------------------------------
     public RelationMatrix getMatrixForVariable( Variable inOtherVariable )
         throws Exception
     {
-        if (this != inOtherVariable) {
-            // search for our matrix that relates us to other Variable.
-            for (Enumeration e = _matrixList.elements() ; e.hasMoreElements() ; ) {
-                RelationMatrix mat = (RelationMatrix) e.nextElement();
-                if (mat.relates( inOtherVariable ))
-                    return mat;
-            }
-        }
+        int index = inOtherVariable._index;
+
+        if ((index < _matrixRow.length) && (_matrixRow[index] != null) &&
+            _matrixRow[index].relates( inOtherVariable ))
+            return _matrixRow[index];
+
         throw new Exception("No Matrix found in " + _name +
                             " corresponding to " + inOtherVariable );
     }
@@ -104,10 +122,7 @@ public class Variable
     //----------------------------------------------------------------------
     public boolean hasValueName( String inValueName )
     {
-        for (ValueEnumeration e = elements() ; e.hasMoreValues() ;)
-            if (inValueName.equals( e.nextValue().getName() ))
-                return true;
-        return false;
+        return _valueTable.containsKey( inValueName );
     }
 
 
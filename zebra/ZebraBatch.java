@@ -0,0 +1,364 @@
+//----------------------------------------------------------------------
+//  ZebraBatch
+//
+//  Solves a batch of clue files without a display.  The files come from
+//  a directory, or one name per line on standard input, and are solved
+//  on a pool of worker threads, each with LogicEngines of its own.  A
+//  file may hold many puzzles and may be gzipped, see ClueReader.  It's
+//  read a puzzle at a time as the workers ask for them, so a corpus of
+//  any size is spread over all the threads.
+//
+//      ZebraBatch [-threads n] [-cache file] directory
+//      ZebraBatch [-threads n] [-cache file] [-]       file names on stdin
+//
+//  With -cache, puzzles go through a SolveCache, loaded from the file
+//  first if it's there and saved back to it at the end, so a puzzle
+//  seen before, even renamed, isn't solved again.
+//
+//  Each puzzle gets one line on standard output, in the order they
+//  finish, named as ClueReader names it:
+//
+//      name <tab> solved <tab> ms <tab> guesses <tab> answer rows, " / " between
+//      name <tab> failed <tab> ms <tab> reason
+//
+//  and a line of totals goes to standard error at the end.
+//
+//  The totals so far, from the engines' SolverStatistics, are also an
+//  MBean, zebra:type=ZebraBatch, on the platform MBean server.  Run
+//  with -Dcom.sun.management.jmxremote.port=n (and its friends) to
+//  scrape them from outside while a batch runs.
+//----------------------------------------------------------------------
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import javax.management.*;
+
+class ZebraBatch
+{
+    static final long kCacheBytes = 64L << 20;
+
+    PrintStream     _out;           // where results go
+    String          _files[];       // files of a directory, or null
+    BufferedReader  _names;         // else where to read file names from
+    int             _nextFile = 0;
+    ClueReader      _reader = null; // the file puzzles are coming from
+    BatchStatistics _stats;         // totals so far
+    SolveCache      _cache = null;  // or null to solve everything
+
+    //----------------------------------------------------------------------
+    //  main
+    //----------------------------------------------------------------------
+    public static void main( String args[] )
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String source = "-", cacheFile = null;
+        int i = 0;
+
+        while (i + 1 < args.length) {
+            if (args[i].equals("-threads"))
+                threads = Integer.parseInt( args[i + 1] );
+            else if (args[i].equals("-cache"))
+                cacheFile = args[i + 1];
+            else
+                break;
+            i += 2;
+        }
+        if (i < args.length)
+            source = args[i];
+
+        ZebraBatch batch = new ZebraBatch( System.out );
+        batch.registerMBean();
+        if (cacheFile != null) {
+            batch.setCache( new SolveCache( kCacheBytes ));
+            try {
+                if (new File( cacheFile ).exists())
+                    batch._cache.load( cacheFile );
+            }
+            catch (IOException ex) {
+                System.err.println("Can't read " + cacheFile + ", starting afresh: " + ex );
+            }
+        }
+        try {
+            if (source.equals("-"))
+                batch.setNames( new BufferedReader( new InputStreamReader( System.in )));
+            else
+                batch.setDirectory( new File( source ));
+        }
+        catch (IOException ex) {
+            System.err.println("Can't read " + source + ": " + ex );
+            System.exit( 2 );
+        }
+
+        long start = System.currentTimeMillis();
+        batch.run( threads );
+
+        long end = System.currentTimeMillis();
+        System.err.println( batch.getSolvedCount() + " solved, " + batch.getFailedCount() +
+                            " failed on " + threads + " threads, " + (end - start) + "ms");
+        if (cacheFile != null) {
+            System.err.println( batch._cache );
+            try {
+                batch._cache.save( cacheFile );
+            }
+            catch (IOException ex) {
+                System.err.println("Can't write " + cacheFile + ": " + ex );
+            }
+        }
+        System.exit( (batch.getFailedCount() == 0) ? 0 : 1 );
+    }
+
+    //----------------------------------------------------------------------
+    //  Constructor
+    //----------------------------------------------------------------------
+    public ZebraBatch( PrintStream inOut )
+    {
+        _out = inOut;
+        _stats = new BatchStatistics();
+    }
+
+    //----------------------------------------------------------------------
+    //  registerMBean -- show the totals through JMX.  A batch runs without
+    //  them if that can't be done.
+    //----------------------------------------------------------------------
+    public void registerMBean()
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean( _stats,
+                                    new ObjectName("zebra:type=ZebraBatch"));
+        }
+        catch (Exception ex) {
+            System.err.println("Can't register statistics MBean: " + ex );
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  setDirectory, setNames -- where the clue files come from.  A
+    //  directory's files are taken in name order; subdirectories are
+    //  skipped.  Names on a stream are read as the workers need them, so
+    //  solving can start before the list ends.
+    //----------------------------------------------------------------------
+    public void setDirectory( File inDirectory )
+        throws IOException
+    {
+        String names[] = inDirectory.list();
+        Vector files = new Vector();
+
+        if (names == null)
+            throw new IOException("Not a directory");
+
+        Arrays.sort( names );
+        for (int i = 0; i < names.length; i++) {
+            File file = new File( inDirectory, names[i] );
+            if (file.isFile())
+                files.addElement( file.getPath() );
+        }
+        _files = new String[files.size()];
+        files.copyInto( _files );
+    }
+
+    public void setNames( BufferedReader inNames )     { _names = inNames; }
+
+    public int getSolvedCount()     { return _stats.getSolved(); }
+    public int getFailedCount()     { return _stats.getFailed(); }
+    public BatchStatistics getStatistics()  { return _stats; }
+    public void setCache( SolveCache inCache )  { _cache = inCache; }
+
+    //----------------------------------------------------------------------
+    //  run -- solve everything on inThreads threads and wait for them.
+    //----------------------------------------------------------------------
+    public void run( int inThreads )
+    {
+        Thread workers[] = new Thread[Math.max( inThreads, 1 )];
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread( "ZebraBatch-" + i ) {
+                public void run()
+                {
+                    ClueFile puzzle;
+                    while ((puzzle = nextPuzzle()) != null)
+                        solve( puzzle );
+                }
+            };
+            workers[i].start();
+        }
+
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                workers[i].join();
+            }
+            catch (InterruptedException ex) { }
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  nextPuzzle -- the next puzzle to solve, from the file being read or
+    //  the one after it, null when there are none.  A file that can't be
+    //  read or has no puzzles counts as a failure, and so does the rest of
+    //  one that goes bad part way.
+    //----------------------------------------------------------------------
+    synchronized ClueFile nextPuzzle()
+    {
+        ClueFile puzzle;
+        String file;
+
+        while (true) {
+            if (_reader == null) {
+                if ((file = nextFile()) == null)
+                    return null;
+                try {
+                    _reader = new ClueReader( file );
+                }
+                catch (IOException ex) {
+                    failed( file, 0, ex.getMessage(), null );
+                    continue;
+                }
+            }
+
+            try {
+                if ((puzzle = _reader.next()) != null)
+                    return puzzle;
+                if (_reader.getPuzzleCount() == 0)
+                    failed( _reader.getName(), 0, "Empty clue file: " + _reader.getName(), null );
+            }
+            catch (IOException ex) {
+                failed( _reader.getName(), 0, ex.getMessage(), null );
+            }
+            try {
+                _reader.close();
+            }
+            catch (IOException ex) { }
+            _reader = null;
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  nextFile -- the next clue file to read, null when there are none.
+    //  Blank lines on the stream are skipped.
+    //----------------------------------------------------------------------
+    String nextFile()
+    {
+        if (_files != null)
+            return (_nextFile < _files.length) ? _files[_nextFile++] : null;
+
+        try {
+            String line;
+            while ((line = _names.readLine()) != null)
+                if (line.trim().length() > 0)
+                    return line.trim();
+        }
+        catch (IOException ex) {
+            System.err.println("Can't read file names: " + ex );
+        }
+        return null;
+    }
+
+    //----------------------------------------------------------------------
+    //  solve -- solve one puzzle and print its result line.
+    //----------------------------------------------------------------------
+    void solve( ClueFile inPuzzle )
+    {
+        long start = System.currentTimeMillis();
+        LogicEngine engine = null;
+        String result;
+
+        try {
+            if (_cache != null)
+                engine = _cache.solve( inPuzzle.getNumValues(), inPuzzle.getClues() );
+            else {
+                engine = new LogicEngine( inPuzzle.getNumValues(), inPuzzle.getClues() );
+                engine.solve();
+            }
+
+            long end = System.currentTimeMillis();
+            result = inPuzzle.getName() + "\tsolved\t" + (end - start) + "\t" +
+                     engine.getStatistics().getGuesses() + "\t" +
+                     formatAnswer( engine.getSolutionString() );
+            _stats.add( engine.getStatistics(), true );
+        }
+        catch (Exception ex) {
+            long end = System.currentTimeMillis();
+            failed( inPuzzle.getName(), end - start, ex.getMessage(),
+                    (engine != null) ? engine.getStatistics() : null );
+            return;
+        }
+
+        _out.println( result );
+    }
+
+    //  failed -- print a failed line and count it, with the statistics of
+    //  its engine if it got one
+    void failed( String inName, long inTime, String inReason, SolverStatistics inStats )
+    {
+        _out.println( inName + "\tfailed\t" + inTime + "\t" + inReason );
+        _stats.add( inStats, false );
+    }
+
+    //----------------------------------------------------------------------
+    //  formatAnswer -- the engine's answer table on one line: rows joined
+    //  by " / ", values by spaces.
+    //----------------------------------------------------------------------
+    static String formatAnswer( String inSolution )
+    {
+        StringTokenizer rows = new StringTokenizer( inSolution, "\n");
+        StringBuffer answer = new StringBuffer();
+
+        while (rows.hasMoreTokens()) {
+            if (answer.length() > 0)
+                answer.append(" / ");
+            answer.append( rows.nextToken().trim().replace( '\t', ' ' ));
+        }
+        return answer.toString();
+    }
+
+}   // end of class definition
+
+
+
+
+//----------------------------------------------------------------------
+//  BatchStatistics
+//
+//  A batch's totals: puzzles solved and failed, and every engine's
+//  statistics added up.  The workers add to it as they finish puzzles;
+//  JMX reads it from any thread.
+//----------------------------------------------------------------------
+
+class BatchStatistics implements BatchStatisticsMBean
+{
+    int                 _solved = 0;
+    int                 _failed = 0;
+    SolverStatistics    _totals = new SolverStatistics();
+
+    //  one puzzle done, with the statistics of its engine if it got one
+    synchronized void add( SolverStatistics inStats, boolean inSolved )
+    {
+        if (inSolved)
+            _solved++;
+        else
+            _failed++;
+        if (inStats != null)
+            _totals.add( inStats );
+    }
+
+    public synchronized int  getSolved()        { return _solved; }
+    public synchronized int  getFailed()        { return _failed; }
+    public synchronized int  getGuesses()       { return _totals.getGuesses(); }
+    public synchronized int  getBacktracks()    { return _totals.getBacktracks(); }
+    public synchronized int  getMaxDepth()      { return _totals.getMaxDepth(); }
+    public synchronized int  getConflicts()     { return _totals.getConflicts(); }
+    public synchronized long getCellSets()      { return _totals.getCellSets(); }
+    public synchronized long getTransitivePropagations()
+                                                { return _totals.getTransitivePropagations(); }
+    public synchronized long getEliminations()  { return _totals.getEliminations(); }
+    public synchronized long getReapplications()    { return _totals.getReapplications(); }
+    public synchronized long getBuildTime()     { return _totals.getBuildTime(); }
+    public synchronized long getInitTime()      { return _totals.getInitTime(); }
+    public synchronized long getPropagateTime() { return _totals.getPropagateTime(); }
+    public synchronized long getSearchTime()    { return _totals.getSearchTime(); }
+
+    public synchronized String toString()
+    {
+        return _solved + " solved, " + _failed + " failed\n" + _totals;
+    }
+}
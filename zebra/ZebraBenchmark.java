@@ -0,0 +1,454 @@
+//----------------------------------------------------------------------
+//  ZebraBenchmark
+//
+//  Solves the same puzzles with each branching strategy and compares
+//  how many guesses (search nodes) and backtracks each one needed.
+//  With -parallel, compares the sequential engine with ParallelSolver
+//  instead, and with -cycles times the engine's guess and undo.  With
+//  -exactcover, compares the engine with ExactCoverSolver on the samples
+//  and on generated puzzles of sizes 5 to 12.
+//
+//      ZebraBenchmark [clueFile ...]                   given puzzles, or the samples
+//      ZebraBenchmark -random size count [seed]        generated puzzles
+//      ZebraBenchmark -parallel threads [puzzles]      either of the above
+//      ZebraBenchmark -cycles rounds [clueFile ...]    guess/undo cycles
+//      ZebraBenchmark -exactcover [count [seed]]       count puzzles of each size
+//----------------------------------------------------------------------
+
+import java.io.*;
+import java.util.*;
+
+class ZebraBenchmark
+{
+    static final String kStrategyNames[] = { "row-major", "fewest-candidates",
+                                             "constraint-degree" };
+    static final String kDefaultPuzzles[] = { "ErnstMunterTestCode/simple.txt",
+                                              "ErnstMunterTestCode/lcz.txt" };
+
+    //----------------------------------------------------------------------
+    //  main
+    //----------------------------------------------------------------------
+    public static void main( String args[] )
+    {
+        ClueFile puzzles[];
+        int threads = 0, first = 0;
+
+        if ((args.length >= 2) && args[0].equals("-cycles")) {
+            timeCycles( args );
+            return;
+        }
+        if ((args.length >= 1) && args[0].equals("-exactcover")) {
+            compareExactCover( args );
+            return;
+        }
+        if ((args.length >= 2) && args[0].equals("-parallel")) {
+            threads = Integer.parseInt( args[1] );
+            first = 2;
+        }
+
+        try {
+            puzzles = loadPuzzles( args, first );
+        }
+        catch (Exception ex) {
+            System.err.println("Can't load puzzles: " + ex );
+            System.exit( 1 );
+            return;
+        }
+
+        if (threads > 0)
+            compareParallel( threads, puzzles );
+        else
+            for (int i = 0; i < kStrategyNames.length; i++)
+                compareStrategy( i, puzzles );
+    }
+
+    //----------------------------------------------------------------------
+    //  loadPuzzles -- "-random size count [seed]", clue files, or the
+    //  samples if there are no arguments from inFirst on.
+    //----------------------------------------------------------------------
+    static ClueFile[] loadPuzzles( String args[], int inFirst )
+        throws Exception
+    {
+        ClueFile puzzles[];
+
+        if ((args.length >= inFirst + 3) && args[inFirst].equals("-random")) {
+            int size = Integer.parseInt( args[inFirst + 1] );
+            int count = Integer.parseInt( args[inFirst + 2] );
+            long seed = (args.length > inFirst + 3) ? Long.parseLong( args[inFirst + 3] ) : 1;
+            Random random = new Random( seed );
+
+            puzzles = new ClueFile[count];
+            for (int i = 0; i < count; i++)
+                puzzles[i] = randomPuzzle( random, size, size * (size + 1) );
+        } else {
+            String files[] = kDefaultPuzzles;
+            if (args.length > inFirst) {
+                files = new String[args.length - inFirst];
+                System.arraycopy( args, inFirst, files, 0, files.length );
+            }
+            puzzles = new ClueFile[files.length];
+            for (int i = 0; i < files.length; i++)
+                puzzles[i] = ClueFile.read( files[i] );
+        }
+        return puzzles;
+    }
+
+    static BranchingStrategy makeStrategy( int inWhich )
+    {
+        switch (inWhich) {
+        case 0:     return new RowMajorBranching();
+        case 1:     return new FewestCandidatesBranching();
+        default:    return new ConstraintDegreeBranching();
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  compareStrategy -- solve every puzzle with one strategy and print
+    //  a line of totals.
+    //----------------------------------------------------------------------
+    static void compareStrategy( int inWhich, ClueFile inPuzzles[] )
+    {
+        long guesses = 0, backtracks = 0;
+        int failures = 0;
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < inPuzzles.length; i++) {
+            LogicEngine engine = new LogicEngine( inPuzzles[i].getNumValues(),
+                                                  inPuzzles[i].getClues() );
+            engine.setBranchingStrategy( makeStrategy( inWhich ));
+            try {
+                engine.solve();
+            }
+            catch (Exception ex) {
+                failures++;
+            }
+            guesses += engine.getStatistics().getGuesses();
+            backtracks += engine.getStatistics().getBacktracks();
+        }
+
+        long end = System.currentTimeMillis();
+
+        System.out.println( kStrategyNames[inWhich] + ":\t" + inPuzzles.length +
+                            " puzzles, " + guesses + " guesses, " + backtracks +
+                            " backtracks, " + failures + " failures, " +
+                            (end - start) + "ms");
+    }
+
+    //----------------------------------------------------------------------
+    //  compareParallel -- solve every puzzle with the sequential engine and
+    //  with a ParallelSolver, and print the time each took in all.  Every
+    //  parallel answer must match the sequential one.
+    //----------------------------------------------------------------------
+    static void compareParallel( int inThreads, ClueFile inPuzzles[] )
+    {
+        String answers[] = new String[inPuzzles.length];
+        long sequentialTime = 0, parallelTime = 0, start;
+        int mismatches = 0;
+
+        for (int i = 0; i < inPuzzles.length; i++) {
+            LogicEngine engine = new LogicEngine( inPuzzles[i].getNumValues(),
+                                                  inPuzzles[i].getClues() );
+            start = System.currentTimeMillis();
+            try {
+                engine.solve();
+                answers[i] = engine.getSolutionString();
+            }
+            catch (Exception ex) { }    // no solution, answer stays null
+            sequentialTime += System.currentTimeMillis() - start;
+
+            ParallelSolver solver = new ParallelSolver( inPuzzles[i].getNumValues(),
+                                                        inPuzzles[i].getClues() );
+            solver.setThreadCount( inThreads );
+            String answer = null;
+            start = System.currentTimeMillis();
+            try {
+                answer = solver.solve().getSolutionString();
+            }
+            catch (Exception ex) { }
+            parallelTime += System.currentTimeMillis() - start;
+
+            if ((answer == null) ? (answers[i] != null) : !answer.equals( answers[i] ))
+                mismatches++;
+        }
+
+        System.out.println( inPuzzles.length + " puzzles, sequential " + sequentialTime +
+                            "ms, " + inThreads + " threads " + parallelTime + "ms, " +
+                            mismatches + " mismatched answers");
+    }
+
+    //----------------------------------------------------------------------
+    //  compareExactCover -- -exactcover [count [seed]].  10 puzzles of each
+    //  size by default.  The samples go once first, untimed, to warm up.
+    //----------------------------------------------------------------------
+    static void compareExactCover( String args[] )
+    {
+        int count = (args.length > 1) ? Integer.parseInt( args[1] ) : 10;
+        long seed = (args.length > 2) ? Long.parseLong( args[2] ) : 1;
+        Random random = new Random( seed );
+        ClueFile samples[] = new ClueFile[kDefaultPuzzles.length];
+
+        try {
+            for (int i = 0; i < samples.length; i++)
+                samples[i] = ClueFile.read( kDefaultPuzzles[i] );
+        }
+        catch (Exception ex) {
+            System.err.println("Can't load puzzles: " + ex );
+            System.exit( 1 );
+        }
+
+        compareExactCover("warm-up", samples, false );
+        compareExactCover("samples", samples, true );
+
+        for (int size = 5; size <= 12; size++) {
+            ClueFile puzzles[] = new ClueFile[count];
+            for (int i = 0; i < count; i++)
+                puzzles[i] = randomPuzzle( random, size, size * (size + 1) );
+            compareExactCover("size " + size, puzzles, true );
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  compareExactCover -- solve every puzzle with the engine and with an
+    //  ExactCoverSolver and print the time each took in all.  Where the
+    //  answers differ the puzzle had better have another solution; if it
+    //  doesn't, that's a mismatch.
+    //----------------------------------------------------------------------
+    static void compareExactCover( String inName, ClueFile inPuzzles[], boolean inPrint )
+    {
+        long engineTime = 0, coverTime = 0, start;
+        long guesses = 0, tried = 0;
+        int others = 0, mismatches = 0;
+        String answer;
+
+        for (int i = 0; i < inPuzzles.length; i++) {
+            String clues[] = inPuzzles[i].getClues();
+            int numValues = inPuzzles[i].getNumValues();
+
+            LogicEngine engine = new LogicEngine( numValues, clues );
+            answer = null;
+            start = System.nanoTime();
+            try {
+                engine.solve();
+                answer = engine.getSolutionString();
+            }
+            catch (Exception ex) { }    // no solution, answer stays null
+            engineTime += System.nanoTime() - start;
+            guesses += engine.getStatistics().getGuesses();
+
+            ExactCoverSolver solver = new ExactCoverSolver( numValues, clues );
+            String coverAnswer = null;
+            start = System.nanoTime();
+            try {
+                coverAnswer = solver.solve().getSolutionString();
+            }
+            catch (Exception ex) { }
+            coverTime += System.nanoTime() - start;
+            tried += solver.getNodesTried();
+
+            if ((answer == null) ? (coverAnswer == null) : answer.equals( coverAnswer ))
+                continue;
+            if ((answer != null) && (coverAnswer != null) &&
+                !hasUniqueSolution( inPuzzles[i] ))
+                others++;
+            else
+                mismatches++;
+        }
+
+        if (inPrint)
+            System.out.println( inName + ":\t" + inPuzzles.length + " puzzles, engine " +
+                                (engineTime / 1000000) + "ms " + guesses + " guesses, " +
+                                "exact cover " + (coverTime / 1000000) + "ms " + tried +
+                                " options tried, " + others + " other solutions, " +
+                                mismatches + " mismatched answers");
+    }
+
+    static boolean hasUniqueSolution( ClueFile inPuzzle )
+    {
+        try {
+            return new LogicEngine( inPuzzle.getNumValues(),
+                                    inPuzzle.getClues() ).hasUniqueSolution();
+        }
+        catch (Exception ex) {
+            return false;
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  timeCycles -- -cycles rounds [clueFile ...]
+    //----------------------------------------------------------------------
+    static void timeCycles( String args[] )
+    {
+        int rounds = Integer.parseInt( args[1] );
+        int numFiles = Math.max( args.length - 2, 1 );
+
+        for (int i = 0; i < numFiles; i++) {
+            String file = (args.length > 2) ? args[i + 2] : kDefaultPuzzles[i];
+            try {
+                timeGuessCycles( file, ClueFile.read( file ), rounds );
+            }
+            catch (Exception ex) {
+                System.err.println( file + ": " + ex );
+            }
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  timeGuessCycles -- apply a puzzle's clues once, then guess each
+    //  cell left UNSET and undo back to where it was, inRounds times over.
+    //  That's the engine's inner loop: set a cell, let the matrices
+    //  propagate it, take it all back.  Prints the time per cycle.  A
+    //  warm-up pass runs first so the JIT has had its go.
+    //----------------------------------------------------------------------
+    static void timeGuessCycles( String inName, ClueFile inPuzzle, int inRounds )
+        throws Exception
+    {
+        LogicEngine engine = new LogicEngine( inPuzzle.getNumValues(),
+                                              inPuzzle.getClues() );
+
+        applyClues( engine, inPuzzle.getClues() );
+        SetCommand guessList[] = openCells( engine );
+
+        if (guessList.length == 0) {
+            System.out.println( inName + ": solved by the clues alone");
+            return;
+        }
+
+        runCycles( engine.getContext(), guessList, Math.max( inRounds / 10, 1 ));
+
+        long start = System.nanoTime();
+        long cycles = runCycles( engine.getContext(), guessList, inRounds );
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println( inName + ":\t" + guessList.length + " open cells, " +
+                            cycles + " cycles, " + (elapsed / cycles) + " ns/cycle");
+    }
+
+    //----------------------------------------------------------------------
+    //  applyClues -- put the clues into a new engine, without reapplying
+    //  or searching.  Also BenchmarkSuite's starting point.
+    //----------------------------------------------------------------------
+    static void applyClues( LogicEngine inEngine, String inClues[] )
+        throws Exception
+    {
+        inEngine.buildVarList( inClues );
+        inEngine.initRelationMatrices();
+        for (int i = 0; i < inClues.length; i++) {
+            try {
+                inEngine.processRelation( inClues[i] );
+            }
+            catch (Exception ex) { }    // not every line is a relation
+        }
+    }
+
+    //  openCells -- every cell the engine's clues left open, as YES guesses
+    static SetCommand[] openCells( LogicEngine inEngine )
+    {
+        Vector cells = new Vector();
+        RelationMatrix matrices[] = inEngine.getMatrixList();
+
+        for (int i = 0; i < matrices.length; i++)
+            for (int x = 0; x < matrices[i].getSize(); x++)
+                for (long open = matrices[i].getRowUnset( x ); open != 0; open &= open - 1)
+                    cells.addElement( new SetCommand( matrices[i], x,
+                                            Long.numberOfTrailingZeros( open ),
+                                            RelationMatrix.YES ));
+        SetCommand list[] = new SetCommand[cells.size()];
+        cells.copyInto( list );
+        return list;
+    }
+
+    static long runCycles( SolverContext inContext, SetCommand inGuesses[], int inRounds )
+    {
+        SetCommand guess;
+        long cycles = 0;
+        int mark;
+
+        for (int r = 0; r < inRounds; r++) {
+            for (int i = 0; i < inGuesses.length; i++) {
+                guess = inGuesses[i];
+                mark = inContext.mark();
+                try {
+                    guess.matrix.set( guess.x, guess.y, guess.what, 0 );
+                }
+                catch (Exception ex) { }    // a bad guess is undone all the same
+                inContext.rewind( mark );
+                cycles++;
+            }
+        }
+        return cycles;
+    }
+
+    //----------------------------------------------------------------------
+    //  randomPuzzle -- make up a solution with inSize variables of inSize
+    //  values each, then write clues that are true of it.  The clues
+    //  aren't checked for a unique answer.
+    //----------------------------------------------------------------------
+    static ClueFile randomPuzzle( Random inRandom, int inSize, int inNumClues )
+    {
+        Vector clues = new Vector();
+        int made = 0;
+        int position[][] = new int[inSize][inSize];     // [variable][value]
+        int place[][] = new int[inSize][inSize];        // [variable][position]
+
+        for (int v = 0; v < inSize; v++) {
+            for (int i = 0; i < inSize; i++)
+                position[v][i] = i;
+            for (int i = inSize - 1; i > 0; i--) {      // shuffle
+                int j = inRandom.nextInt( i + 1 );
+                int temp = position[v][i]; position[v][i] = position[v][j]; position[v][j] = temp;
+            }
+            for (int i = 0; i < inSize; i++) {
+                place[v][position[v][i]] = i;
+                clues.addElement( valueName( v, i ) + " ISA kind" + v );
+            }
+        }
+        for (int v = 1; v < inSize; v++)
+            clues.addElement("kind0 with" + v + " kind" + v );
+
+        while (made < inNumClues) {
+            int varA = inRandom.nextInt( inSize );
+            int varB = inRandom.nextInt( inSize );
+            int a = inRandom.nextInt( inSize );
+            int pos = position[varA][a];
+            int kind = inRandom.nextInt( 10 );
+            int before = clues.size();
+
+            if (kind < 4) {
+                int next = (pos == 0) ? 1 : (pos == inSize - 1) ? pos - 1 :
+                                (inRandom.nextBoolean() ? pos - 1 : pos + 1);
+                clues.addElement( valueName( varA, a ) + " NEXT_TO " +
+                                  valueName( varB, place[varB][next] ));
+            } else if (kind < 7) {
+                if (pos > 0)
+                    clues.addElement( valueName( varA, a ) + " IMMED_RIGHT_OF " +
+                                      valueName( varB, place[varB][pos - 1] ));
+            } else if (kind < 9) {
+                if (varB != 0)
+                    clues.addElement( valueName( 0, place[0][pos] ) + " with" + varB +
+                                      " " + valueName( varB, place[varB][pos] ));
+            } else if (pos == 0) {
+                clues.addElement( valueName( varA, a ) + " IS_LOCATED AT_LEFT");
+            } else if (pos == inSize - 1) {
+                clues.addElement( valueName( varA, a ) + " IS_LOCATED AT_RIGHT");
+            }
+            if (clues.size() > before)
+                made++;
+        }
+
+        StringBuffer answer = new StringBuffer("ANSWER");
+        for (int v = 0; v < inSize; v++)
+            answer.append(" kind" + v );
+        clues.addElement("SOLVE kind0 with1 " + valueName( 1, 0 ));
+        clues.addElement( answer.toString() );
+
+        String clueList[] = new String[clues.size()];
+        clues.copyInto( clueList );
+        return new ClueFile("random", inSize, clueList );
+    }
+
+    //  e.g. "C4", the fifth value of the third variable
+    static String valueName( int inVar, int inValue )
+    {
+        return "" + (char) ('A' + inVar) + inValue;
+    }
+}
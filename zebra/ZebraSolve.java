@@ -0,0 +1,275 @@
+//----------------------------------------------------------------------
+//  ZebraSolve
+//
+//  Solves clue files from the command line, without a display, for
+//  scripts.  Every puzzle in the files (see ClueReader) gets one line
+//  of JSON on standard output, in order:
+//
+//      {"name":"lcz.txt","status":"solved","answer":"Japanese",
+//       "columns":["person","house",...],"rows":[["English","redHouse",...],...],
+//       "stats":{"us":2900,"guesses":3,...}}
+//
+//  all on one line.  The answer is what the SOLVE clue asks for, the
+//  columns are the ANSWER clue's variables in its order and the rows are
+//  the solution found, a row for each position, left to right.  The
+//  stats are the engine's SolverStatistics, times in microseconds.
+//
+//  The status is one of
+//
+//      solved          one answer to the SOLVE clue
+//      ambiguous       more than one; "alternative" is another, the rows
+//                      and answer are from the first found
+//      unsolvable      no solution, "error" says what contradicts
+//      invalid         the clues can't be read or compiled, see "error"
+//      error           the solver itself went wrong, see "error"
+//
+//  and the exit status is the worst of them: 0, 1 (unsolvable),
+//  2 (ambiguous), 3 (invalid, including a bad command line) or 4 (error).
+//
+//      ZebraSolve [file ...]       files, or standard input if none or "-"
+//
+//  For a quick start when called many times, run it through zebrasolve,
+//  which keeps a class-data-sharing archive of the classes it loads.
+//----------------------------------------------------------------------
+
+import java.io.*;
+import java.util.*;
+
+class ZebraSolve
+{
+    static final int kSolved = 0;
+    static final int kUnsolvable = 1;
+    static final int kAmbiguous = 2;
+    static final int kInvalid = 3;
+    static final int kError = 4;
+    static final String kStatusNames[] = { "solved", "unsolvable", "ambiguous", "invalid",
+                                           "error" };
+
+    PrintStream     _out;
+    int             _status = kSolved;  // worst so far
+
+    //----------------------------------------------------------------------
+    //  main
+    //----------------------------------------------------------------------
+    public static void main( String args[] )
+    {
+        ZebraSolve solver = new ZebraSolve( System.out );
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-") && !args[i].equals("-")) {
+                System.err.println("Usage: ZebraSolve [file ...]");
+                System.exit( kInvalid );
+            }
+        }
+
+        if (args.length == 0)
+            solver.solveAll("-");
+        for (int i = 0; i < args.length; i++)
+            solver.solveAll( args[i] );
+
+        System.out.flush();
+        System.exit( solver.getStatus() );
+    }
+
+    //----------------------------------------------------------------------
+    //  Constructor
+    //----------------------------------------------------------------------
+    public ZebraSolve( PrintStream inOut )
+    {
+        _out = inOut;
+    }
+
+    public int  getStatus()         { return _status; }
+
+    //----------------------------------------------------------------------
+    //  solveAll -- every puzzle in a file, "-" for standard input.  A file
+    //  that can't be read is one invalid puzzle, and so is the rest of one
+    //  that goes bad part way.
+    //----------------------------------------------------------------------
+    public void solveAll( String inFileName )
+    {
+        ClueReader in = null;
+        ClueFile puzzle;
+
+        try {
+            if (inFileName.equals("-"))
+                in = new ClueReader( System.in, "-", ClueReader.kDefaultCharset );
+            else
+                in = new ClueReader( inFileName );
+
+            while ((puzzle = in.next()) != null)
+                solve( puzzle );
+            if (in.getPuzzleCount() == 0)
+                failed( inFileName, kInvalid, "Empty clue file: " + inFileName );
+        }
+        catch (IOException ex) {
+            failed( inFileName, kInvalid, ex.getMessage() );
+        }
+        finally {
+            try {
+                if (in != null)
+                    in.close();
+            }
+            catch (IOException ex) { }
+        }
+    }
+
+    //----------------------------------------------------------------------
+    //  solve -- one puzzle, and print its line.  The clues, SOLVE and
+    //  ANSWER too, are all compiled before any is applied, so a clue that
+    //  can't be read is told apart from one that contradicts the others.
+    //  Only a LogicFailureException means there's no solution; anything
+    //  else thrown after compiling, or any RuntimeException, is an error.
+    //----------------------------------------------------------------------
+    public void solve( ClueFile inPuzzle )
+    {
+        long start = System.nanoTime();
+        LogicEngine engine = new LogicEngine( inPuzzle.getNumValues(), inPuzzle.getClues() );
+        Vector constraints;
+
+        try {
+            constraints = engine.compile();
+        }
+        catch (RuntimeException ex) {
+            failed( inPuzzle.getName(), kError, ex.toString() );
+            return;
+        }
+        catch (Exception ex) {
+            failed( inPuzzle.getName(), kInvalid, ex.getMessage() );
+            return;
+        }
+
+        try {
+            engine.start( constraints );
+            if (engine.countSolutions( 1 ) == 0)
+                throw new LogicFailureException("No solution");
+        }
+        catch (LogicFailureException ex) {
+            failed( inPuzzle.getName(), kUnsolvable, ex.getMessage() );
+            return;
+        }
+        catch (Exception ex) {
+            failed( inPuzzle.getName(), kError, ex.toString() );
+            return;
+        }
+
+        StringBuffer line = new StringBuffer();
+        int status = kSolved;
+
+        try {
+            line.append("{\"name\":" + quote( inPuzzle.getName() ));
+            int statusAt = line.length();
+            line.append(",\"answer\":" + quote( engine.getAnswer() ));
+            appendSolution( line, engine );
+
+            if (engine.findOtherAnswer()) {
+                status = kAmbiguous;
+                line.append(",\"alternative\":" + quote( engine.getAnswer() ));
+            }
+            line.insert( statusAt, ",\"status\":" + quote( kStatusNames[status] ));
+        }
+        catch (Exception ex) {
+            failed( inPuzzle.getName(), kError, ex.toString() );
+            return;
+        }
+
+        appendStatistics( line, engine.getStatistics(), System.nanoTime() - start );
+        line.append("}");
+        _out.println( line.toString() );
+        _status = Math.max( _status, status );
+    }
+
+    //  failed -- a line for a puzzle with no answer
+    void failed( String inName, int inStatus, String inError )
+    {
+        _out.println("{\"name\":" + quote( inName ) + ",\"status\":" +
+                     quote( kStatusNames[inStatus] ) + ",\"error\":" + quote( inError ) + "}");
+        _status = Math.max( _status, inStatus );
+    }
+
+    //----------------------------------------------------------------------
+    //  appendSolution -- the columns and rows of the solution the engine
+    //  holds, a row for each position from the left, so the rows read as
+    //  the houses (or whatever) stand.
+    //----------------------------------------------------------------------
+    void appendSolution( StringBuffer inLine, LogicEngine inEngine )
+        throws Exception
+    {
+        Vector columns = inEngine.getAnswerVariables();
+        Variable positionVar = inEngine.getPositionVariable();
+        Variable column;
+        Value position;
+
+        inLine.append(",\"columns\":[");
+        for (int c = 0; c < columns.size(); c++) {
+            column = (Variable) columns.elementAt( c );
+            inLine.append( ((c > 0) ? "," : "") + quote( column.getName() ));
+        }
+
+        inLine.append("],\"rows\":[");
+        for (int i = 0; i < inEngine.getNumValues(); i++) {
+            position = positionVar.getValueByIndex( i );
+            inLine.append( (i > 0) ? ",[" : "[" );
+            for (int c = 0; c < columns.size(); c++) {
+                column = (Variable) columns.elementAt( c );
+                inLine.append( ((c > 0) ? "," : "") +
+                               quote( column.getMatrixForVariable( positionVar )
+                                            .findPositiveRelation( position )));
+            }
+            inLine.append("]");
+        }
+        inLine.append("]");
+    }
+
+    //  appendStatistics -- the engine's counts, and the whole time taken
+    void appendStatistics( StringBuffer inLine, SolverStatistics inStats, long inTime )
+    {
+        inLine.append(",\"stats\":{\"us\":" + (inTime / 1000) +
+                      ",\"guesses\":" + inStats.getGuesses() +
+                      ",\"backtracks\":" + inStats.getBacktracks() +
+                      ",\"backjumps\":" + inStats.getBackjumps() +
+                      ",\"maxDepth\":" + inStats.getMaxDepth() +
+                      ",\"conflicts\":" + inStats.getConflicts() +
+                      ",\"learned\":" + inStats.getLearnedNogoods() +
+                      ",\"cellSets\":" + inStats.getCellSets() +
+                      ",\"transitive\":" + inStats.getTransitivePropagations() +
+                      ",\"eliminations\":" + inStats.getEliminations() +
+                      ",\"reapplications\":" + inStats.getReapplications());
+        for (int i = 0; i < inStats._phaseTime.length; i++)
+            inLine.append(",\"" + SolverStatistics.kPhaseNames[i] + "Us\":" +
+                          (inStats._phaseTime[i] / 1000));
+        inLine.append("}");
+    }
+
+    //----------------------------------------------------------------------
+    //  quote -- a JSON string, or null
+    //----------------------------------------------------------------------
+    static String quote( Object inObject )
+    {
+        if (inObject == null)
+            return "null";
+
+        String s = inObject.toString();
+        StringBuffer quoted = new StringBuffer( s.length() + 2 );
+        char c;
+
+        quoted.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            c = s.charAt( i );
+            if ((c == '"') || (c == '\\'))
+                quoted.append('\\').append( c );
+            else if (c == '\n')
+                quoted.append("\\n");
+            else if (c == '\t')
+                quoted.append("\\t");
+            else if (c < ' ') {
+                String hex = Integer.toHexString( c );
+                quoted.append("\\u0000".substring( 0, 6 - hex.length() )).append( hex );
+            } else
+                quoted.append( c );
+        }
+        quoted.append('"');
+        return quoted.toString();
+    }
+
+}   // end of class definition
@@ -11,16 +11,35 @@ class ZebraTest
     static int sNumValues;
     static String sClues[];
 
+    static final int kStressThreads = 16;
+    static final int kStressRounds = 25;
+    static final String kDefaultPuzzles[] = { "ErnstMunterTestCode/simple.txt",
+                                              "ErnstMunterTestCode/lcz.txt",
+                                              "ErnstMunterTestCode/position.txt" };
+
 
     //----------------------------------------------------------------------
+    //  main -- "ZebraTest -stress [clueFile ...]" runs the stress test,
+    //  otherwise ask for a clue file and solve it.
     //----------------------------------------------------------------------
     public static void main( String args[] )
     {
+        if ((args.length > 0) && args[0].equals("-stress")) {
+            String files[] = new String[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                files[i-1] = args[i];
+            if (files.length == 0)
+                files = kDefaultPuzzles;
+
+            System.exit( stressTest( files ) ? 0 : 1 );
+        }
+
         try {
             readClueFile( );
         }
         catch (IOException ex) {
-            System.err.println("File access error: " + args[0] + ".\n" + ex);
+            System.err.println("File access error.\n" + ex);
+            System.exit( 2 );
         }
 
         for (int i = 0; i < sNumClues; i++)
@@ -40,6 +59,90 @@ class ZebraTest
     }
 
 
+    //----------------------------------------------------------------------
+    //  stressTest -- solve each puzzle once for reference answers, then
+    //  solve them all over again on many threads at once, each with its
+    //  own LogicEngine.  Every answer must match the reference.  Each
+    //  engine then counts solutions and checks uniqueness after solving,
+    //  which must agree with a fresh engine's count.
+    //  Returns true if all answers matched.
+    //----------------------------------------------------------------------
+    public static boolean stressTest( String inFileNames[] )
+    {
+        final ClueFile puzzles[] = new ClueFile[inFileNames.length];
+        final String answers[] = new String[inFileNames.length];
+        final int counts[] = new int[inFileNames.length];
+        final Vector failures = new Vector();
+
+        try {
+            for (int i = 0; i < inFileNames.length; i++) {
+                puzzles[i] = ClueFile.read( inFileNames[i] );
+                LogicEngine engine = new LogicEngine( puzzles[i].getNumValues(),
+                                                      puzzles[i].getClues() );
+                engine.solve();
+                answers[i] = engine.getSolutionString();
+                counts[i] = new LogicEngine( puzzles[i].getNumValues(),
+                                             puzzles[i].getClues() ).countSolutions( 2 );
+            }
+        }
+        catch (Exception ex) {
+            System.err.println("Reference solve failed: " + ex );
+            return false;
+        }
+
+        Thread threads[] = new Thread[kStressThreads];
+        long start = System.currentTimeMillis();
+
+        for (int t = 0; t < kStressThreads; t++) {
+            threads[t] = new Thread() {
+                public void run()
+                {
+                    for (int round = 0; round < kStressRounds; round++) {
+                        for (int i = 0; i < puzzles.length; i++) {
+                            try {
+                                LogicEngine engine = new LogicEngine(
+                                    puzzles[i].getNumValues(), puzzles[i].getClues() );
+                                engine.solve();
+                                if (!engine.getSolutionString().equals( answers[i] ))
+                                    failures.addElement( puzzles[i].getName() +
+                                        ": wrong answer\n" + engine.getSolutionString() );
+                                if (engine.countSolutions( 2 ) != counts[i])
+                                    failures.addElement( puzzles[i].getName() +
+                                        ": wrong count after solve()" );
+                                if (engine.hasUniqueSolution() != (counts[i] == 1))
+                                    failures.addElement( puzzles[i].getName() +
+                                        ": wrong uniqueness after solve()" );
+                            }
+                            catch (Exception ex) {
+                                failures.addElement( puzzles[i].getName() + ": " + ex );
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        try {
+            for (int t = 0; t < kStressThreads; t++)
+                threads[t].join();
+        }
+        catch (InterruptedException ex) {
+            failures.addElement("Interrupted: " + ex );
+        }
+
+        long end = System.currentTimeMillis();
+        int solves = kStressThreads * kStressRounds * puzzles.length;
+
+        for (Enumeration e = failures.elements() ; e.hasMoreElements() ; )
+            System.err.println( e.nextElement() );
+        System.out.println( solves + " solves on " + kStressThreads + " threads, " +
+                            failures.size() + " failures, " + (end - start) + "ms");
+
+        return failures.size() == 0;
+    }
+
+
     //----------------------------------------------------------------------
     //  interface to Logic code
     //----------------------------------------------------------------------
@@ -59,35 +162,18 @@ class ZebraTest
     //----------------------------------------------------------------------
     //  readClueFile -- reads a file of clues with the first line
     //  being two integers: # of clues, and problem dimension
-    //  The rest should be clues.
+    //  The rest should be clues.  See ClueReader.
     //  Values stored in the static variables
     //----------------------------------------------------------------------
     public static void readClueFile( )
-        throws FileNotFoundException
+        throws IOException
     {
         FileDialog dialog = new FileDialog( null, "Clue File");
         dialog.show();
 
-        try {
-            FileInputStream clueFile = new FileInputStream(
-                                                dialog.getDirectory() +
-                                                dialog.getFile() );
-
-            DataInputStream inline = new DataInputStream( clueFile );
-
-            if (inline.available() > 0) {
-                String header = inline.readLine();
-                StringTokenizer tok = new StringTokenizer( header );
-                sNumClues  = Integer.valueOf( tok.nextToken() ).intValue();
-                sNumValues = Integer.valueOf( tok.nextToken() ).intValue();
-            }
-
-            sClues = new String[sNumClues];
-
-            for (int i = 0; (i < sNumClues) && (inline.available() > 0); i++)
-                sClues[i] = inline.readLine();
-
-        }
-        catch(IOException e) {} ;
+        ClueFile puzzle = ClueFile.read( dialog.getDirectory() + dialog.getFile() );
+        sClues = puzzle.getClues();
+        sNumClues = sClues.length;
+        sNumValues = puzzle.getNumValues();
     }
 }
\ No newline at end of file